@@ -0,0 +1,88 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bn.BayesianNetwork;
+import bn.CompiledNetwork;
+import bn.Node;
+import util.RandomSource;
+import util.SplittableRandomSource;
+import util.WeightedSet;
+
+/**
+ * Cost of a single CPT lookup for a node with the given number of parents, through
+ * Node.getProbability and through the compiled network, and of drawing the node's state
+ * from its sampling table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CptBenchmark {
+
+	@Param({"1", "4", "8"})
+	public int numParents;
+
+	private Node child;
+	private CompiledNetwork compiled;
+	private int[] assignment;
+	private int[] parentStates;
+	private RandomSource stream;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(431L);
+		Node[] nodes = new Node[numParents + 1];
+		for(int p = 0; p < numParents; p++) {
+			WeightedSet prior = new WeightedSet(1);
+			prior.increment(0, 0.5);
+			nodes[p] = new Node("p" + p, prior);
+		}
+		Node[] parents = Arrays.copyOf(nodes, numParents);
+		WeightedSet cpt = new WeightedSet(numParents);
+		for(int row = 0; row < cpt.getSize(); row++) {
+			cpt.increment(row, random.nextDouble());
+		}
+		child = new Node("child", parents, cpt);
+		nodes[numParents] = child;
+
+		compiled = new BayesianNetwork(nodes).getCompiledNetwork();
+		assignment = new int[nodes.length];
+		for(int p = 0; p < numParents; p++) {
+			assignment[p] = random.nextInt(2);
+		}
+		parentStates = Arrays.copyOf(assignment, numParents);
+		stream = new SplittableRandomSource(431L);
+	}
+
+	@Benchmark
+	public double nodeGetProbability() {
+		return child.getProbability(parentStates, 0);
+	}
+
+	@Benchmark
+	public double compiledGetProbability() {
+		return compiled.getProbability(numParents, assignment, 0);
+	}
+
+	@Benchmark
+	public int compiledSample() {
+		return compiled.sample(numParents, assignment, stream);
+	}
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import bn.BayesianNetwork;
+import tui.NetworkGenerator;
+import tui.Reader;
+
+/**
+ * Networks shared by the benchmarks: the .bn files bundled with the project and
+ * synthetic networks named "synthetic-<depth>x<width>", written by NetworkGenerator.
+ */
+final class Networks {
+	private static final int SYNTHETIC_MAX_PARENTS = 4;
+	private static final double SYNTHETIC_RARITY = 1.0;
+	private static final long SYNTHETIC_SEED = 431L;
+
+	private Networks() {
+	}
+
+	static BayesianNetwork load(String name) throws IOException {
+		if(name.startsWith("synthetic-")) {
+			String[] size = name.substring("synthetic-".length()).split("x");
+			return new BayesianNetwork(Reader.read(synthetic(Integer.parseInt(size[0]), Integer.parseInt(size[1]))));
+		}
+		return new BayesianNetwork(Reader.read(extract(name + ".bn")));
+	}
+
+	// Writes a synthetic network to a temporary .bn file and returns its name
+	static String synthetic(int depth, int width) throws IOException {
+		File file = temporaryFile();
+		new NetworkGenerator(depth, width, SYNTHETIC_MAX_PARENTS, SYNTHETIC_RARITY, SYNTHETIC_SEED).write(file.getPath());
+		return file.getPath();
+	}
+
+	// Reader takes a file name, so bundled networks are copied out of the jar first
+	private static String extract(String resource) throws IOException {
+		File file = temporaryFile();
+		try(InputStream in = Networks.class.getClassLoader().getResourceAsStream(resource)) {
+			if(in == null) {
+				throw new IOException("No bundled network " + resource);
+			}
+			Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return file.getPath();
+	}
+
+	private static File temporaryFile() throws IOException {
+		File file = File.createTempFile("network", ".bn");
+		file.deleteOnExit();
+		return file;
+	}
+}
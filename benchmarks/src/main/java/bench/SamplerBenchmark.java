@@ -0,0 +1,105 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bn.BayesianNetwork;
+import bn.BlockSampler;
+import bn.Node;
+import bn.QueryPlan;
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+ * Throughput of the three samplers, reported in samples per second.
+ *
+ * Every network is queried for its first node, with the last node observed true as
+ * evidence for rejection sampling and likelihood weighting. The block* benchmarks draw
+ * the same samples column by column with BlockSampler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplerBenchmark {
+	private static final int SAMPLES = 10000;
+
+	@Param({"earthquake_alarm", "wet_grass", "synthetic-20x50", "synthetic-100x50"})
+	public String network;
+
+	private BayesianNetwork bn;
+	private QueryPlan noEvidence;
+	private QueryPlan withEvidence;
+	private BlockSampler blockSampler;
+	private RandomSource random;
+
+	@Setup
+	public void setup() throws IOException {
+		bn = Networks.load(network);
+		Node[] nodes = bn.getNodes();
+		String first = nodes[0].getName();
+		String last = nodes[nodes.length - 1].getName();
+		noEvidence = bn.compile(Query.processQuery("p(" + first + ")"));
+		withEvidence = bn.compile(Query.processQuery("p(" + first + " | " + last + ")"));
+		blockSampler = new BlockSampler(bn.getCompiledNetwork());
+		random = RandomSource.seeded(431L);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public WeightedSet directSample() {
+		return bn.directSample(noEvidence, SAMPLES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public WeightedSet rejectionSampling() {
+		return bn.rejectionSampling(withEvidence, SAMPLES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public WeightedSet likelihoodWeighting() {
+		return bn.likelihoodWeighting(withEvidence, SAMPLES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public WeightedSet blockDirectSample() {
+		WeightedSet tally = new WeightedSet(noEvidence.getQuerySize());
+		blockSampler.directSample(noEvidence, SAMPLES, random, tally);
+		return tally;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public WeightedSet blockRejectionSampling() {
+		WeightedSet tally = new WeightedSet(withEvidence.getQuerySize());
+		blockSampler.rejectionSample(withEvidence, SAMPLES, random, tally);
+		return tally;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public WeightedSet blockLikelihoodWeighting() {
+		WeightedSet tally = new WeightedSet(withEvidence.getQuerySize());
+		blockSampler.likelihoodWeighting(withEvidence, SAMPLES, random, tally);
+		return tally;
+	}
+}
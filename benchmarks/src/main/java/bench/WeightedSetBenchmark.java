@@ -0,0 +1,64 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import util.BitVector;
+import util.WeightedSet;
+
+/**
+ * Cost of WeightedSet.increment, by BitVector and by rank, and of BitVector.hashCode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeightedSetBenchmark {
+
+	@Param({"4", "20"})
+	public int size;
+
+	private WeightedSet set;
+	private BitVector event;
+	private long rank;
+	private long counter;
+
+	@Setup
+	public void setup() {
+		set = new WeightedSet(size);
+		event = new BitVector(size);
+		for(int p = 0; p < size; p += 2) {
+			event.set(p, false);
+		}
+		rank = event.toRank();
+	}
+
+	@Benchmark
+	public void incrementByBitVector() {
+		set.increment(event, 1.0);
+	}
+
+	@Benchmark
+	public void incrementByRank() {
+		// cycle through a handful of configurations so sparse sets see more than one key
+		set.increment((rank + (counter++ & 7)) & ((1L << size) - 1), 1.0);
+	}
+
+	@Benchmark
+	public int bitVectorHashCode() {
+		return event.hashCode();
+	}
+}
@@ -0,0 +1,124 @@
+package bn;
+
+
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* Samples a query in batches until a target precision is reached or a budget runs out.
+*
+* After every batch the largest standard error over the query outcomes is estimated
+* from the effective sample size (see Estimate). Sampling stops as soon as it is below
+* the target, or when the sample or time budget is spent, whichever comes first. To aim
+* for a 95% confidence half-width h, use a target standard error of h / 1.96.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class AdaptiveSampler {
+	/** The default number of samples drawn between two convergence checks */
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	//Below this effective sample size the error estimate itself is unreliable
+	private static final double MIN_EFFECTIVE_SAMPLES = 100;
+
+	private BayesianNetwork network;
+	private double maxStandardError;
+	private long maxSamples;
+	private long maxMillis;
+	private int batchSize;
+
+	/**
+	* Creates an adaptive sampler with the default batch size
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	* @param maxStandardError
+	* 			The target standard error for every query outcome
+	* @param maxSamples
+	* 			The largest number of samples to draw
+	* @param maxMillis
+	* 			The longest time to spend sampling, in milliseconds
+	*/
+	public AdaptiveSampler(BayesianNetwork network, double maxStandardError, long maxSamples, long maxMillis) {
+		this(network, maxStandardError, maxSamples, maxMillis, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	* Creates an adaptive sampler
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	* @param maxStandardError
+	* 			The target standard error for every query outcome
+	* @param maxSamples
+	* 			The largest number of samples to draw
+	* @param maxMillis
+	* 			The longest time to spend sampling, in milliseconds
+	* @param batchSize
+	* 			The number of samples drawn between two convergence checks
+	*
+	* @throws IllegalArgumentException if the target or batch size is not positive
+	*/
+	public AdaptiveSampler(BayesianNetwork network, double maxStandardError, long maxSamples, long maxMillis, int batchSize) {
+		if(maxStandardError <= 0 || batchSize < 1) {
+			throw new IllegalArgumentException("Target standard error and batch size must be positive");
+		}
+		this.network = network;
+		this.maxStandardError = maxStandardError;
+		this.maxSamples = maxSamples;
+		this.maxMillis = maxMillis;
+		this.batchSize = batchSize;
+	}
+
+
+	/**
+	* Estimates a query, drawing batches of samples until the target precision is reached
+	*
+	* @param plan
+	* 			The query plan
+	* @param method
+	* 			The sampling method
+	* @return
+	* 			The distribution over the query variables with its error estimate
+	*/
+	public Estimate estimate(QueryPlan plan, SamplingMethod method) {
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		RandomSource random = network.newRandomStream();
+		long deadline = System.nanoTime() + maxMillis * 1000000L;
+
+		WeightedSet tally = plan.newTally();
+		double sumOfSquares = 0;
+		long drawn = 0;
+		boolean converged = false;
+
+		while(drawn < maxSamples && !converged){
+			int batch = (int)Math.min(batchSize, maxSamples - drawn);
+			sumOfSquares += method.sample(compiled, plan, batch, random, tally);
+			drawn += batch;
+
+			converged = maxStandardError(tally, sumOfSquares) <= maxStandardError;
+			if(System.nanoTime() >= deadline){
+				break;
+			}
+		}
+		return new Estimate(tally, sumOfSquares, drawn, converged);
+	}
+
+	//The largest standard error over the outcomes of an unnormalized tally, or infinity if its
+	//effective sample size is too small to tell
+	static double maxStandardError(WeightedSet tally, double sumOfSquares) {
+		double total = tally.getTotalWeight();
+		double ess = sumOfSquares > 0 ? total * total / sumOfSquares : 0;
+		if(ess < MIN_EFFECTIVE_SAMPLES){
+			return Double.POSITIVE_INFINITY;
+		}
+		double max = 0;
+		for(long rank : tally.getEventRanks()){
+			double p = tally.getWeight(rank) / total;
+			max = Math.max(max, Math.sqrt(p * (1 - p) / ess));
+		}
+		return max;
+	}
+}
@@ -0,0 +1,135 @@
+package bn;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* Answers many queries at once by sharing samples between queries with the same evidence.
+*
+* The queries are grouped by their evidence. One pool of samples is drawn per group, over
+* the union of the nodes the queries of the group need, and every sample is added to the
+* tally of each query in the group as soon as it is drawn. A batch of marginal queries
+* without evidence therefore costs a single sampling run instead of one per query.
+*
+* The samples of a group are shared, so the errors of the answers in a group are correlated.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class BatchSampler {
+
+	private CompiledNetwork network;
+
+	/**
+	* Creates a batch sampler
+	*
+	* @param network
+	* 			The compiled network to sample
+	*/
+	public BatchSampler(CompiledNetwork network) {
+		this.network = network;
+	}
+
+
+	/**
+	* Approximates every query with the given method, drawing one pool of samples for each
+	* distinct evidence assignment
+	*
+	* @param plans
+	* 			The queries resolved against the network
+	* @param method
+	* 			The sampling method
+	* @param numSamples
+	* 			The number of samples drawn for each group of queries with the same evidence
+	* @param random
+	* 			The random number stream
+	* @return
+	* 			A probability distribution over the query variables of each query, in the order of the plans
+	*/
+	public List<WeightedSet> sample(List<QueryPlan> plans, SamplingMethod method, int numSamples, RandomSource random) {
+		WeightedSet[] tallies = new WeightedSet[plans.size()];
+		for(List<Integer> group : groupByEvidence(plans)){
+			QueryPlan[] members = new QueryPlan[group.size()];
+			WeightedSet[] groupTallies = new WeightedSet[group.size()];
+			for(int g = 0; g < members.length; g++){
+				members[g] = plans.get(group.get(g));
+				groupTallies[g] = members[g].newTally();
+				tallies[group.get(g)] = groupTallies[g];
+			}
+			sample(members, method, numSamples, random, groupTallies);
+		}
+
+		List<WeightedSet> distributions = new ArrayList<WeightedSet>(tallies.length);
+		for(WeightedSet tally : tallies){
+			distributions.add(BayesianNetwork.normalize(tally));
+		}
+		return distributions;
+	}
+
+	//The positions of the plans, grouped by evidence in order of first appearance
+	private static List<List<Integer>> groupByEvidence(List<QueryPlan> plans) {
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		for(int q = 0; q < plans.size(); q++){
+			QueryPlan plan = plans.get(q);
+			StringBuilder key = new StringBuilder();
+			for(int id : plan.getEvidenceIds()){
+				key.append(id).append('=').append(plan.getEvidence()[id]).append(' ');
+			}
+			groups.computeIfAbsent(key.toString(), k -> new ArrayList<Integer>()).add(q);
+		}
+		return new ArrayList<List<Integer>>(groups.values());
+	}
+
+	//Draws the shared samples of a group of plans with the same evidence and tallies
+	//every sample for each plan
+	private void sample(QueryPlan[] plans, SamplingMethod method, int numSamples, RandomSource random, WeightedSet[] tallies) {
+		int n = network.size();
+		int[] evidence = plans[0].getEvidence();
+		boolean clamp = method == SamplingMethod.LIKELIHOOD_WEIGHTING;
+		boolean reject = method == SamplingMethod.REJECTION_SAMPLING;
+
+		//sample every node that at least one of the plans needs
+		boolean[] needed = new boolean[n];
+		for(QueryPlan plan : plans){
+			for(int i : plan.getSampleOrder()){
+				needed[i] = true;
+			}
+		}
+		int[] order = QueryPlan.sampleOrder(network, needed, evidence, plans[0].getEvidenceIds());
+		int[] assignment = new int[n];
+
+		sampling:
+		for(int j = 0; j < numSamples; j++){
+			double weight = 1;
+			for(int k = 0; k < order.length; k++){
+				int i = order[k];
+				if(clamp && evidence[i] >= 0){
+					//clamp the node to the evidence and weigh by its likelihood
+					weight *= network.getProbability(i, assignment, evidence[i]);
+					assignment[i] = evidence[i];
+				}
+				else{
+					int state = network.sample(i, assignment, random);
+					if(reject && evidence[i] >= 0 && evidence[i] != state){
+						continue sampling; // Abandon the sample and start over
+					}
+				}
+			}
+
+			for(int t = 0; t < plans.length; t++){
+				long[] queryStrides = plans[t].getQueryStrides();
+				long rank = 0;
+				for(int i : plans[t].getQueryIds()){
+					rank += assignment[i] * queryStrides[i];
+				}
+				tallies[t].increment(rank, weight);
+			}
+		}
+	}
+}
@@ -1,15 +1,18 @@
 package bn;
 
 import tui.Query;
-import tui.Reader;
-import util.BitVector;
+import util.RandomSource;
 import util.WeightedSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
-* Represents a generic Bayesian Network of boolean random variables
+* Represents a generic Bayesian Network of discrete random variables
+*
+* The structure of the network (its nodes, or their compiled form) is immutable, and every
+* inference call keeps its own assignment of states and random number stream. One network
+* can therefore answer any number of queries in parallel without being copied.
 *
 * @author Sarah Walling-Bell
 * @version March 29, 2019
@@ -17,7 +20,12 @@ import java.util.Set;
 */
 public class BayesianNetwork {
 
-	private Node[] bn; //the bayesian network
+	private Node[] bn; //the bayesian network, rebuilt on first use for a network loaded in compiled form
+	private final CompiledNetwork compiled; //array form of the network used by the samplers
+	private VariableElimination exact; //exact inference engine, created on first use
+	private JunctionTree junctionTree; //compiled junction tree, created on first use
+	private RandomSource random; //the root that every sampling run splits its own stream off
+	private long generation; //the number of times the root has been replaced
 
 	/**
 	* Constructs a new Bayesian network with the given nodes.
@@ -28,8 +36,18 @@ public class BayesianNetwork {
 	*/
 	public BayesianNetwork(Node[] nodes) {
 		bn = nodes;
-		for(int i = 0; i < bn.length; i++){
-		}
+		compiled = new CompiledNetwork(nodes);
+		random = RandomSource.unseeded();
+	}
+
+	/**
+	* Constructs a Bayesian network from its compiled form, e.g. one loaded with BinaryNetwork
+	*
+	* @param compiled The compiled network
+	*/
+	public BayesianNetwork(CompiledNetwork compiled) {
+		this.compiled = compiled;
+		this.random = RandomSource.unseeded();
 	}
 
 
@@ -37,10 +55,86 @@ public class BayesianNetwork {
 	* Returns the nodes in the Bayesian network
 	* @return The nodes in the Bayesian network
 	*/
-	public Node[] getNodes() {
+	public synchronized Node[] getNodes() {
+		if(bn == null){
+			bn = toNodes(compiled);
+		}
 		return bn;
 	}
 
+	//Copies a compiled network back into nodes with their own CPTs
+	private static Node[] toNodes(CompiledNetwork compiled) {
+		Node[] nodes = new Node[compiled.size()];
+		for(int i = 0; i < nodes.length; i++){
+			int[] parentIds = compiled.getParents(i);
+			Node[] parents = new Node[parentIds.length];
+			for(int p = 0; p < parents.length; p++){
+				parents[p] = nodes[parentIds[p]];
+			}
+			String[] states = new String[compiled.getCardinality(i)];
+			for(int s = 0; s < states.length; s++){
+				states[s] = compiled.getStateName(i, s);
+			}
+			nodes[i] = new Node(compiled.getName(i), states, parents, compiled.cpt(i));
+		}
+		return nodes;
+	}
+
+	/**
+	* Returns the array form of the Bayesian network used by the samplers
+	* @return The compiled network
+	*/
+	public CompiledNetwork getCompiledNetwork() {
+		return compiled;
+	}
+
+
+	/**
+	* Replaces the root random number source. Every sampling run without an explicit
+	* stream splits a new stream off the root, so after seeding the root the same sequence
+	* of calls gives the same results, bit for bit. Results that a QueryCache drew from the
+	* previous root are not reused.
+	*
+	* @param random
+	* 			The new root source, e.g. RandomSource.seeded(seed) or new Xoshiro256(seed)
+	*/
+	public synchronized void setRandomSource(RandomSource random) {
+		this.random = random;
+		generation++;
+	}
+
+	//Identifies the current root source: the number of times it has been replaced
+	synchronized long getRandomSourceGeneration() {
+		return generation;
+	}
+
+	//A new random number stream for one sampling run
+	synchronized RandomSource newRandomStream() {
+		return random.split();
+	}
+
+	//A new random number stream split off the root, or null if the root has been replaced
+	//since it was the given generation. The check and the split are one atomic step.
+	synchronized RandomSource newRandomStream(long generation) {
+		return generation == this.generation ? random.split() : null;
+	}
+
+
+	/**
+	* Resolves the variable names of a query against this network. The resulting plan can be
+	* passed to the inference methods any number of times.
+	*
+	* @param q
+	* 			The query
+	* @return
+	* 			The query plan
+	*
+	* @throws IllegalArgumentException if the query names a variable that is not in the network
+	*/
+	public QueryPlan compile(Query q) {
+		return new QueryPlan(compiled, q);
+	}
+
 
 	/**
 	* Approximates the query using direct sampling
@@ -54,35 +148,37 @@ public class BayesianNetwork {
 	* 			A probability distribution over the query variables
 	*/
 	public WeightedSet directSample(Query q, int numSamples) {
+		return directSample(compile(q), numSamples);
+	}
 
-		//weighted_set ← {}
-		int querySize =  q.queryVariables.size();
-		WeightedSet ws = new WeightedSet(querySize); //a map that stores (sample, count) pairs
-
-		// for s=1...numSamples
-		for(int j = 0; j < numSamples; j++){
-
-			// sample ← {}
-			BitVector sample = new BitVector(querySize);
-			int sampleSet = 0;
-
-			for(int i = 0; i < bn.length; i++){ //for node Xi in bn (bn[i])
-
-				//value = randomly sample from p(Xi | parents(Xi))
-				boolean value = bn[i].sampleAndSet();
-
-				if(q.queryVariables.contains(bn[i].getName())){
-					sample.set(sampleSet, value);
-					sampleSet++;
-				}
-			}
-
-			//Sample now contains the sampled values for all of the query variables
-			ws.increment(sample, 1);
-		}
+	/**
+	* Approximates a compiled query using direct sampling
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for direct sampling
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet directSample(QueryPlan plan, int numSamples) {
+		return directSample(plan, numSamples, newRandomStream());
+	}
 
-		ws.normalizeWeights();
-		return ws;
+	/**
+	* Approximates a compiled query using direct sampling with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for direct sampling
+	* @param random
+	* 			The random number stream, used by this call only
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet directSample(QueryPlan plan, int numSamples, RandomSource random) {
+		return normalize(compiled.directSample(plan, numSamples, random));
 	}
 
 
@@ -99,48 +195,55 @@ public class BayesianNetwork {
 	*/
 
 	public WeightedSet rejectionSampling(Query q, int numSamples) {
+		return rejectionSampling(compile(q), numSamples);
+	}
 
-		//weighted_set ← {}
-		int querySize =  q.queryVariables.size();
-		WeightedSet ws = new WeightedSet(querySize); //a map that stores (sample, count) pairs
-
-		// for s=1...numSamples
-		for(int j = 0; j < numSamples; j++){
-
-			// sample ← {}
-			BitVector sample = new BitVector(querySize);
-			int sampleSet = 0;
-			boolean increment = true;
-
-			for(int i = 0; i < bn.length; i++){ //for node Xi in bn (bn[i])
-				increment = true;
-
-				//value = randomly sample from p(Xi | parents(Xi))
-				boolean value = bn[i].sampleAndSet();
-
-				if(q.evidenceVariables.contains(bn[i].getName())){
-					if(q.evidenceValues.get(bn[i].getName()) != value){
-						increment = false;
-						break; // Abandon the sample and start over
-					}
-				}
-
-				//if (Xi == query variable) --> sample.append(value)
-				if(q.queryVariables.contains(bn[i].getName())){
-					sample.set(sampleSet, value);
-					sampleSet++;
-				}
-			}
+	/**
+	* Approximates a compiled query using rejection sampling
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for rejection sampling
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet rejectionSampling(QueryPlan plan, int numSamples) {
+		return rejectionSamplingResult(plan, numSamples).getDistribution();
+	}
 
-			//Sample now contains the sampled values for all of the query variables
-			//The sampled values are guaranteed to be consistent with the evidence
-			if(increment == true){
-				ws.increment(sample, 1);
-			}
-		}
+	/**
+	* Approximates a compiled query using rejection sampling and reports how many of the
+	* samples were consistent with the evidence
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for rejection sampling
+	* @return
+	* 			The distribution over the query variables with the acceptance statistics
+	*/
+	public RejectionResult rejectionSamplingResult(QueryPlan plan, int numSamples) {
+		return rejectionSamplingResult(plan, numSamples, newRandomStream());
+	}
 
-		ws.normalizeWeights();
-		return ws;
+	/**
+	* Approximates a compiled query using rejection sampling with the given random numbers
+	* and reports how many of the samples were consistent with the evidence
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for rejection sampling
+	* @param random
+	* 			The random number stream, used by this call only
+	* @return
+	* 			The distribution over the query variables with the acceptance statistics
+	*/
+	public RejectionResult rejectionSamplingResult(QueryPlan plan, int numSamples, RandomSource random) {
+		WeightedSet tally = compiled.rejectionSample(plan, numSamples, random);
+		long accepted = (long)tally.getTotalWeight();
+		return new RejectionResult(normalize(tally), accepted, numSamples);
 	}
 
 
@@ -157,49 +260,134 @@ public class BayesianNetwork {
 	*/
 
 	public WeightedSet likelihoodWeighting(Query q, int numSamples) {
+		return likelihoodWeighting(compile(q), numSamples);
+	}
 
-		int querySize =  q.queryVariables.size();
+	/**
+	* Approximates a compiled query using likelihood weighting
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for likelihood weighting
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet likelihoodWeighting(QueryPlan plan, int numSamples) {
+		return likelihoodWeighting(plan, numSamples, newRandomStream());
+	}
 
-		//weighted_set ← {}
-		WeightedSet ws = new WeightedSet(querySize); //a map that stores (sample, count) pairs
+	/**
+	* Approximates a compiled query using likelihood weighting with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples for likelihood weighting
+	* @param random
+	* 			The random number stream, used by this call only
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet likelihoodWeighting(QueryPlan plan, int numSamples, RandomSource random) {
+		return normalize(compiled.likelihoodWeighting(plan, numSamples, random));
+	}
 
-		// for s=1...numSamples
-		for(int j = 0; j < numSamples; j++){
 
-			//weight ← 1
-			double weight = 1;
-			// sample ← {}
-			BitVector sample = new BitVector(querySize);
-			int sampleSet = 0;
+	/**
+	* Approximates a batch of queries, drawing one pool of samples for every distinct
+	* evidence assignment and sharing it between the queries with that evidence
+	*
+	* @param queries
+	* 			The queries
+	* @param method
+	* 			The sampling method
+	* @param numSamples
+	* 			The number of samples drawn for each group of queries with the same evidence
+	* @return
+	* 			A probability distribution over the query variables of each query, in order
+	*
+	* @throws IllegalArgumentException if a query names a variable that is not in the network
+	*/
+	public List<WeightedSet> sampleBatch(List<Query> queries, SamplingMethod method, int numSamples) {
+		List<QueryPlan> plans = new ArrayList<QueryPlan>(queries.size());
+		for(Query q : queries){
+			plans.add(compile(q));
+		}
+		return new BatchSampler(compiled).sample(plans, method, numSamples, newRandomStream());
+	}
 
-			for(int i = 0; i < bn.length; i++){ //for node Xi in bn (bn[i])
 
-				if(q.evidenceVariables.contains(bn[i].getName())){
-					//clamp the node's variable: set the node value to whatever the evidence is.
-					//if cloudy then true, otherwise false. evidence variable hashset value for the variable.
-					bn[i].setValue(q.evidenceValues.get(bn[i].getName()));
+	/**
+	* Computes the query exactly using variable elimination
+	*
+	* @param q
+	* 			The query
+	* @return
+	* 			The probability distribution over the query variables
+	*/
+	public WeightedSet variableElimination(Query q) {
+		return variableElimination(compile(q));
+	}
 
+	/**
+	* Computes a compiled query exactly using variable elimination
+	*
+	* @param plan
+	* 			The query plan
+	* @return
+	* 			The probability distribution over the query variables
+	*/
+	public WeightedSet variableElimination(QueryPlan plan) {
+		return exact().query(plan);
+	}
 
-					//How likely is the evidence given what we've sampled so far?
-					weight = weight * bn[i].getProbability();
-				}
-				else{
-					//value = randomly sample from p(Xi | parents(Xi))
-					boolean value = bn[i].sampleAndSet();
+	//The variable elimination engine, created on first use by whichever thread gets here first
+	private synchronized VariableElimination exact() {
+		if(exact == null){
+			exact = new VariableElimination(this);
+		}
+		return exact;
+	}
 
-					//if (Xi == query variable) --> sample.append(value)
-					if(q.queryVariables.contains(bn[i].getName())){
-						sample.set(sampleSet, value);
-						sampleSet++;
-					}
-				}
-			}
 
-			//Sample now contains the sampled values for all of the query variables
-			ws.increment(sample, weight);
+	/**
+	* Computes the query exactly from a junction tree. The tree is compiled and calibrated
+	* on the first call and reused by every later query.
+	*
+	* @param q
+	* 			The query
+	* @return
+	* 			The probability distribution over the query variables
+	*/
+	public WeightedSet junctionTree(Query q) {
+		return junctionTree(compile(q));
+	}
+
+	/**
+	* Computes a compiled query exactly from the junction tree
+	*
+	* @param plan
+	* 			The query plan
+	* @return
+	* 			The probability distribution over the query variables
+	*/
+	public WeightedSet junctionTree(QueryPlan plan) {
+		return junctionTree().query(plan);
+	}
+
+	//The calibrated junction tree, compiled on first use by whichever thread gets here first
+	private synchronized JunctionTree junctionTree() {
+		if(junctionTree == null){
+			junctionTree = new JunctionTree(this);
 		}
+		return junctionTree;
+	}
+
 
-		ws.normalizeWeights();
-		return ws;
+	//Normalizes a tally into a distribution over the query variables
+	static WeightedSet normalize(WeightedSet tally) {
+		tally.normalizeWeights();
+		return tally;
 	}
 }
@@ -0,0 +1,243 @@
+package bn;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+* Reads and writes compiled networks in a compact binary format (extension .bnb).
+*
+* All values are little endian. The file starts with a header
+*
+* 		int magic ("BNET"), int version, int number of nodes, int number of parent ids,
+* 		long byte position of the CPT block, long number of CPT entries
+*
+* followed by the node names (each an int byte count and UTF-8 bytes), the number of
+* parents of every node, all parent ids back to back, the kind of the CPT of every node
+* as a byte, the number of states of every node as an int followed by the names of its
+* states (encoded like the node names) and, aligned to 8 bytes, the parameters of the CPTs
+* of all nodes back to back as doubles in the layout of CompiledNetwork. Version 1 files
+* have no kinds; all of their CPTs are dense. Version 1 and 2 files have no states; all of
+* their nodes are boolean.
+*
+* Loading maps the file into memory and reads the CPT block in place, so it is never
+* copied onto the heap and processes that load the same file share its pages.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class BinaryNetwork {
+
+	/** The first four bytes of every binary network file */
+	public static final int MAGIC = 0x54454E42; //"BNET" read as a little endian int
+	/** The version of the format written by this class */
+	public static final int VERSION = 3;
+
+	private static final int HEADER_SIZE = 32;
+
+	private BinaryNetwork() {
+	}
+
+
+	/**
+	* Writes a compiled network to a file
+	*
+	* @param network
+	* 			The compiled network
+	* @param file
+	* 			The file to write, replaced if it exists
+	* @throws IOException if the file cannot be written
+	*/
+	public static void write(CompiledNetwork network, Path file) throws IOException {
+		int n = network.size();
+		byte[][] names = new byte[n][];
+		byte[][][] states = new byte[n][][];
+		long size = HEADER_SIZE;
+		int numParents = 0;
+		long numEntries = 0;
+		for(int i = 0; i < n; i++){
+			names[i] = network.getName(i).getBytes(StandardCharsets.UTF_8);
+			numParents += network.getParents(i).length;
+			numEntries += network.getParameters(i).length;
+			size += 4 + names[i].length + 4 + 1 + 4;
+			states[i] = new byte[network.getCardinality(i)][];
+			for(int s = 0; s < states[i].length; s++){
+				states[i][s] = network.getStateName(i, s).getBytes(StandardCharsets.UTF_8);
+				size += 4 + states[i][s].length;
+			}
+		}
+		size += 4L * numParents;
+		long cptPosition = (size + 7) & ~7L;
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(numParents);
+			buffer.putLong(cptPosition).putLong(numEntries);
+
+			for(int i = 0; i < n; i++){
+				buffer = ensure(channel, buffer, 4 + names[i].length);
+				buffer.putInt(names[i].length).put(names[i]);
+			}
+			for(int i = 0; i < n; i++){
+				buffer = ensure(channel, buffer, 4);
+				buffer.putInt(network.getParents(i).length);
+			}
+			for(int i = 0; i < n; i++){
+				for(int p : network.getParents(i)){
+					buffer = ensure(channel, buffer, 4);
+					buffer.putInt(p);
+				}
+			}
+			for(int i = 0; i < n; i++){
+				buffer = ensure(channel, buffer, 1);
+				buffer.put(network.getKind(i));
+			}
+			for(int i = 0; i < n; i++){
+				buffer = ensure(channel, buffer, 4);
+				buffer.putInt(states[i].length);
+				for(byte[] state : states[i]){
+					buffer = ensure(channel, buffer, 4 + state.length);
+					buffer.putInt(state.length).put(state);
+				}
+			}
+			for(long position = size; position < cptPosition; position++){
+				buffer = ensure(channel, buffer, 1);
+				buffer.put((byte)0);
+			}
+			for(int i = 0; i < n; i++){
+				for(double parameter : network.getParameters(i)){
+					buffer = ensure(channel, buffer, 8);
+					buffer.putDouble(parameter);
+				}
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	/**
+	* Loads a compiled network from a file by mapping it into memory
+	*
+	* @param file
+	* 			A file written by write()
+	* @return The compiled network, whose CPTs are read directly from the mapped file
+	* @throws IOException if the file cannot be read or is not a valid binary network file
+	*/
+	public static CompiledNetwork load(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Binary network files of more than 2 GB are not supported");
+			}
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("Not a binary network file: " + file);
+			}
+			//the mapping stays valid after the channel is closed
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(mapped.order(ByteOrder.LITTLE_ENDIAN), file);
+		}
+	}
+
+	//Reads the names and parents onto the heap and wraps the CPT block in place
+	private static CompiledNetwork read(ByteBuffer buffer, Path file) throws IOException {
+		try {
+			if(buffer.getInt() != MAGIC) {
+				throw new IOException("Not a binary network file: " + file);
+			}
+			int version = buffer.getInt();
+			if(version < 1 || version > VERSION) {
+				throw new IOException("Unsupported binary network version " + version + " in " + file);
+			}
+			int n = buffer.getInt();
+			int numParents = buffer.getInt();
+			long cptPosition = buffer.getLong();
+			long numEntries = buffer.getLong();
+			//every node takes at least 8 bytes and every parent id 4, which also bounds what is allocated
+			if(n < 0 || n > buffer.capacity() / 8 || numParents < 0 || numParents > buffer.capacity() / 4
+					|| cptPosition % 8 != 0 || numEntries < 0 || cptPosition + 8 * numEntries != buffer.capacity()) {
+				throw new IOException("Corrupt binary network file: " + file);
+			}
+
+			String[] names = new String[n];
+			for(int i = 0; i < n; i++){
+				names[i] = readString(buffer);
+			}
+			int[][] parents = new int[n][];
+			for(int i = 0; i < n; i++){
+				parents[i] = new int[count(buffer, 4)];
+			}
+			for(int i = 0; i < n; i++){
+				for(int p = 0; p < parents[i].length; p++){
+					parents[i][p] = buffer.getInt();
+				}
+			}
+
+			byte[] kinds = new byte[n]; //all dense in version 1
+			if(version > 1) {
+				buffer.get(kinds);
+			}
+			String[][] states = new String[n][]; //all boolean before version 3
+			for(int i = 0; i < n; i++){
+				if(version > 2) {
+					states[i] = new String[count(buffer, 4)];
+					for(int s = 0; s < states[i].length; s++){
+						states[i][s] = readString(buffer);
+					}
+				}
+				else {
+					states[i] = Node.BOOLEAN_STATES;
+				}
+			}
+
+			DoubleBuffer cpts = buffer.position((int)cptPosition).slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			return new CompiledNetwork(names, states, parents, kinds, cpts);
+		}
+		catch(RuntimeException e) {
+			//a truncated table, a negative count or an inconsistent structure
+			throw new IOException("Corrupt binary network file: " + file + " (" + e.getMessage() + ")", e);
+		}
+	}
+
+	//Reads an int byte count followed by that many bytes of UTF-8
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[count(buffer, 1)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	//Reads a count of items of the given size, checking that they fit in the rest of the buffer
+	//before anything is allocated for them
+	private static int count(ByteBuffer buffer, int bytesEach) {
+		int count = buffer.getInt();
+		if(count < 0 || count > buffer.remaining() / bytesEach) {
+			throw new IllegalArgumentException("A count of " + count + " runs past the end of the file");
+		}
+		return count;
+	}
+
+	//Makes room for the given number of bytes, writing out the buffer when it is full
+	private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if(buffer.remaining() >= bytes) {
+			return buffer;
+		}
+		flush(channel, buffer);
+		if(buffer.capacity() < bytes) {
+			return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,323 @@
+package bn;
+
+import java.util.Arrays;
+
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* Draws samples a block at a time, one node at a time across the whole block.
+*
+* The values of a node in a block of BLOCK_SIZE samples are packed into a column of longs,
+* one bit per sample (set when the node is true). For every node in the sample order the
+* CPT row of each sample is assembled from the parent columns with shifts, and the node
+* is set by comparing the top 53 bits of a random long with an integer threshold per CPT
+* row. This is the same test as nextDouble() < p, done without floating point or branches.
+* The thresholds of a node are built the first time a query samples it. A noisy-OR or tree
+* CPT with more than MAX_TABLE_PARENTS parents is not expanded into a table; its nodes are
+* drawn sample by sample from CompiledNetwork.getProbability instead.
+*
+* Direct and rejection sampling tally a query with few variables by counting, with popcounts,
+* the accepted samples in every configuration of the query columns. Rejection sampling keeps
+* a mask of the samples that agree with the evidence so far and abandons the block as soon as
+* it is empty. Likelihood weighting keeps the weight of every sample of the block in an array.
+*
+* The samples are drawn from the same distributions as those of CompiledNetwork, but from a
+* different random number sequence. Bit columns only hold boolean variables, so every node
+* relevant to a query must be boolean.
+*
+* BayesianNetwork does not route queries through this class. Doing so would change the answer
+* that a seeded root gives, and only boolean queries could use it. It serves SamplerBenchmark
+* and any caller that wants the block layout explicitly.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class BlockSampler {
+	/** The number of samples drawn together */
+	public static final int BLOCK_SIZE = 4096;
+	/** The largest number of parents of a node whose CPT is expanded into thresholds */
+	public static final int MAX_TABLE_PARENTS = 20;
+
+	//Up to this many query variables, tallies are counted with popcounts over the columns
+	private static final int POPCOUNT_LIMIT = 4;
+	private static final int WORDS = BLOCK_SIZE / 64;
+
+	private final CompiledNetwork network;
+	private final long[][] thresholds; //for every boolean node sampled so far and CPT row, ceil(p * 2^53)
+
+	/**
+	* Prepares a block sampler for a compiled network
+	*
+	* @param network
+	* 			The compiled network
+	*/
+	public BlockSampler(CompiledNetwork network) {
+		this.network = network;
+		thresholds = new long[network.size()][];
+	}
+
+	//The thresholds of a boolean node, built on first use, or null if it has too many parents
+	private synchronized long[] thresholds(int i) {
+		if(network.getParents(i).length > MAX_TABLE_PARENTS){
+			return null;
+		}
+		if(thresholds[i] == null){
+			double[] cpt = network.getCPT(i);
+			long[] threshold = new long[cpt.length];
+			for(int row = 0; row < cpt.length; row++){
+				threshold[row] = (long)Math.ceil(cpt[row] * 0x1p53);
+			}
+			thresholds[i] = threshold;
+		}
+		return thresholds[i];
+	}
+
+
+	/**
+	* Tallies samples drawn by direct sampling
+	*
+	* @param plan
+	* 			The query resolved against the network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that every sample is added to
+	* @return The number of samples, i.e. the sum of their squared weights
+	*/
+	public double directSample(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		return sample(plan, numSamples, random, tally, SamplingMethod.DIRECT_SAMPLING);
+	}
+
+	/**
+	* Tallies samples drawn by rejection sampling
+	*
+	* @param plan
+	* 			The query resolved against the network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that every accepted sample is added to
+	* @return The number of accepted samples, i.e. the sum of their squared weights
+	*/
+	public double rejectionSample(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		return sample(plan, numSamples, random, tally, SamplingMethod.REJECTION_SAMPLING);
+	}
+
+	/**
+	* Tallies samples drawn by likelihood weighting
+	*
+	* @param plan
+	* 			The query resolved against the network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that the weight of every sample is added to
+	* @return The sum of the squared sample weights
+	*/
+	public double likelihoodWeighting(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		return sample(plan, numSamples, random, tally, SamplingMethod.LIKELIHOOD_WEIGHTING);
+	}
+
+
+	private double sample(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally, SamplingMethod method) {
+		int[] order = plan.getSampleOrder();
+		int[] evidence = plan.getEvidence();
+		long[][] tables = new long[network.size()][];
+		for(int i : order){
+			if(network.getCardinality(i) != 2){
+				throw new IllegalArgumentException("Block sampling needs boolean variables, but \"" + network.getName(i)
+					+ "\" has " + network.getCardinality(i) + " states");
+			}
+			tables[i] = thresholds(i);
+		}
+		boolean weigh = method == SamplingMethod.LIKELIHOOD_WEIGHTING;
+		boolean reject = method == SamplingMethod.REJECTION_SAMPLING;
+
+		long[][] columns = new long[network.size()][];
+		for(int i : order){
+			columns[i] = new long[WORDS];
+		}
+		long[] accepted = new long[WORDS]; //the samples of the block that are still valid
+		int[] rows = new int[64];
+		int[] assignment = new int[network.size()]; //one sample at a time, for nodes without thresholds
+		double[] weights = weigh ? new double[BLOCK_SIZE] : null;
+		double sumOfSquares = 0;
+
+		for(int done = 0; done < numSamples; done += BLOCK_SIZE){
+			int size = Math.min(BLOCK_SIZE, numSamples - done);
+			int words = (size + 63) >>> 6;
+			Arrays.fill(accepted, 0, words, -1L);
+			if((size & 63) != 0){
+				accepted[words - 1] = (1L << (size & 63)) - 1;
+			}
+			if(weigh){
+				Arrays.fill(weights, 0, size, 1.0);
+			}
+
+			boolean empty = false;
+			for(int k = 0; k < order.length && !empty; k++){
+				int i = order[k];
+				int[] parents = network.getParents(i);
+				long[] column = columns[i];
+				boolean clamp = weigh && evidence[i] >= 0;
+				boolean table = tables[i] != null;
+				if(parents.length == 0){
+					Arrays.fill(rows, 0);
+				}
+
+				for(int w = 0; w < words; w++){
+					if(table && parents.length > 0){
+						rowsOf(columns, parents, w, rows);
+					}
+					if(clamp){
+						column[w] = evidence[i] == 0 ? -1L : 0L;
+						if(table){
+							weigh(i, evidence[i], rows, weights, w << 6);
+						}
+						else{
+							weigh(i, evidence[i], columns, w, assignment, weights);
+						}
+					}
+					else{
+						column[w] = table ? draw(tables[i], rows, random) : draw(i, columns, w, assignment, random);
+					}
+				}
+
+				if(reject && evidence[i] >= 0){
+					long any = 0;
+					for(int w = 0; w < words; w++){
+						accepted[w] &= evidence[i] == 0 ? column[w] : ~column[w];
+						any |= accepted[w];
+					}
+					empty = any == 0; // Abandon the block, no sample agrees with the evidence
+				}
+			}
+
+			if(empty){
+				continue;
+			}
+			if(weigh){
+				sumOfSquares += tallyWeighted(plan, columns, accepted, words, weights, tally);
+			}
+			else if(plan.getQuerySize() <= POPCOUNT_LIMIT){
+				sumOfSquares += tallyByCount(plan, columns, accepted, words, tally);
+			}
+			else{
+				sumOfSquares += tallyWeighted(plan, columns, accepted, words, null, tally);
+			}
+		}
+		return sumOfSquares;
+	}
+
+	//The CPT row of each of the 64 samples in word w: bit (k-1-p) is set when parent p is false
+	private static void rowsOf(long[][] columns, int[] parents, int w, int[] rows) {
+		long falseBits = ~columns[parents[0]][w];
+		for(int b = 0; b < 64; b++){
+			rows[b] = (int)((falseBits >>> b) & 1L);
+		}
+		for(int p = 1; p < parents.length; p++){
+			falseBits = ~columns[parents[p]][w];
+			for(int b = 0; b < 64; b++){
+				rows[b] = (rows[b] << 1) | (int)((falseBits >>> b) & 1L);
+			}
+		}
+	}
+
+	//A word of 64 samples of a node, each true with the probability of its CPT row
+	private static long draw(long[] threshold, int[] rows, RandomSource random) {
+		long word = 0;
+		for(int b = 0; b < 64; b++){
+			long bit = ((random.nextLong() >>> 11) - threshold[rows[b]]) >>> 63; //1 iff below the threshold
+			word |= bit << b;
+		}
+		return word;
+	}
+
+	//A word of 64 samples of node i without thresholds, evaluating its CPT for every sample
+	private long draw(int i, long[][] columns, int w, int[] assignment, RandomSource random) {
+		long word = 0;
+		for(int b = 0; b < 64; b++){
+			assign(network.getParents(i), columns, w, b, assignment);
+			long threshold = (long)Math.ceil(network.getProbability(i, assignment, 0) * 0x1p53);
+			long bit = ((random.nextLong() >>> 11) - threshold) >>> 63;
+			word |= bit << b;
+		}
+		return word;
+	}
+
+	//Multiplies the weights of 64 samples by the likelihood of the observed state of node i
+	private void weigh(int i, int state, int[] rows, double[] weights, int offset) {
+		for(int b = 0; b < 64; b++){
+			weights[offset + b] *= network.getProbability(i, rows[b], state);
+		}
+	}
+
+	//The same for a node without thresholds, whose rows may not fit in an int
+	private void weigh(int i, int state, long[][] columns, int w, int[] assignment, double[] weights) {
+		for(int b = 0; b < 64; b++){
+			assign(network.getParents(i), columns, w, b, assignment);
+			weights[(w << 6) + b] *= network.getProbability(i, assignment, state);
+		}
+	}
+
+	//Copies the states of the parents in sample b of word w into the assignment
+	private static void assign(int[] parents, long[][] columns, int w, int b, int[] assignment) {
+		for(int p : parents){
+			assignment[p] = (int)(~columns[p][w] >>> b) & 1; //state 0 is true
+		}
+	}
+
+	//Adds the number of accepted samples in every configuration of the query variables
+	private static double tallyByCount(QueryPlan plan, long[][] columns, long[] accepted, int words, WeightedSet tally) {
+		int[] queryIds = plan.getQueryIds();
+		int q = queryIds.length;
+		long total = 0;
+		for(int rank = 0; rank < 1 << q; rank++){
+			long count = 0;
+			for(int w = 0; w < words; w++){
+				long mask = accepted[w];
+				for(int j = 0; j < q; j++){
+					long column = columns[queryIds[j]][w];
+					mask &= ((rank >>> (q - 1 - j)) & 1) != 0 ? ~column : column;
+				}
+				count += Long.bitCount(mask);
+			}
+			if(count > 0){
+				tally.increment(rank, count);
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	//Adds every accepted sample to the tally with its weight (1 if weights is null)
+	//and returns the sum of the squared weights
+	private static double tallyWeighted(QueryPlan plan, long[][] columns, long[] accepted, int words, double[] weights, WeightedSet tally) {
+		int[] queryIds = plan.getQueryIds();
+		long[] queryStrides = plan.getQueryStrides();
+		double sumOfSquares = 0;
+		for(int w = 0; w < words; w++){
+			long mask = accepted[w];
+			while(mask != 0){
+				int b = Long.numberOfTrailingZeros(mask);
+				mask &= mask - 1;
+				long rank = 0;
+				for(int i : queryIds){
+					rank |= ((columns[i][w] >>> b) & 1L) != 0 ? 0 : queryStrides[i];
+				}
+				double weight = weights == null ? 1 : weights[(w << 6) + b];
+				tally.increment(rank, weight);
+				sumOfSquares += weight * weight;
+			}
+		}
+		return sumOfSquares;
+	}
+}
@@ -0,0 +1,290 @@
+package bn;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+* A conditional probability table p(X | parents(X)) for a discrete random variable.
+*
+* The states of every variable are numbered from 0; a boolean variable has state 0 for true
+* and state 1 for false. A configuration of the parents is indexed by its row, the mixed
+* radix number whose digits are the states of the parents, the first parent being the most
+* significant. For boolean parents this is the rank used throughout (bit (k-1-p) is set when
+* parent p is false), which is also the order in which the rows appear in a .bn file.
+*
+* The implementations differ in how many parameters they need:
+*
+* - DenseCPT lists p(X = true) for every row of a boolean variable
+* - CategoricalCPT lists p(X = s) for every row and every state of a multi-valued variable
+* - NoisyOrCPT has a leak probability and one probability per parent, k + 1 in all
+* - NoisyMaxCPT generalizes noisy-OR to multi-valued variables with one distribution per
+* 	abnormal state of every parent
+* - TreeCPT is a decision tree over the parents with a probability at every leaf, so
+* 	configurations that share a probability share a leaf
+*
+* Only tables are limited to 2^MAX_DENSE_PARENTS entries. Noisy-OR and tree CPTs are over a
+* boolean variable with boolean parents. Every implementation evaluates a configuration in
+* O(k) time and is immutable. Its parameters are a flat array of doubles (see the
+* implementations for their layout), which is also how CompiledNetwork and BinaryNetwork
+* store it.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public abstract class CPT {
+	/** The largest number of boolean parents of a node with a table CPT */
+	public static final int MAX_DENSE_PARENTS = 30;
+
+	//The kinds of CPT, as stored by CompiledNetwork and BinaryNetwork
+	static final byte DENSE = 0;
+	static final byte NOISY_OR = 1;
+	static final byte TREE = 2;
+	static final byte CATEGORICAL = 3;
+	static final byte NOISY_MAX = 4;
+
+	private final int[] parentCardinalities;
+	private final int numStates;
+	private final DoubleBuffer parameters;
+	private final int[] positions; //0, 1, ..., k - 1: evaluates parameters against states in parent order
+	private final int[] strides; //the row stride of every parent, null unless the CPT is a table
+
+	CPT(int[] parentCardinalities, int numStates, double[] parameters) {
+		this.parentCardinalities = parentCardinalities;
+		this.numStates = numStates;
+		this.parameters = DoubleBuffer.wrap(parameters);
+		this.positions = new int[parentCardinalities.length];
+		for(int p = 0; p < positions.length; p++){
+			positions[p] = p;
+		}
+		int size = size(getKind(), this.parameters, 0, numStates, parentCardinalities);
+		if(size != parameters.length){
+			throw new IllegalArgumentException("The CPT needs " + size + " parameters, not " + parameters.length);
+		}
+		this.strides = isTable(getKind()) ? strides(parentCardinalities) : null;
+	}
+
+	/**
+	* Returns the number of parents of the random variable
+	* @return The number of parents
+	*/
+	public int getNumParents() {
+		return parentCardinalities.length;
+	}
+
+	/**
+	* Returns the number of states of the random variable
+	* @return The number of states, 2 for a boolean variable
+	*/
+	public int getNumStates() {
+		return numStates;
+	}
+
+	/**
+	* Returns p(X = state | parents(X)) for the given states of the parents
+	*
+	* @param parentStates
+	* 			The state of every parent, in parent order
+	* @param state
+	* 			A state of the random variable
+	* @return The probability of the random variable taking the state
+	*/
+	public double getProbability(int[] parentStates, int state) {
+		return probability(getKind(), parameters, 0, numStates, positions, strides, parentStates, state);
+	}
+
+	/**
+	* Returns the number of parameters of the CPT
+	* @return The number of doubles in the CPT's layout
+	*/
+	public int getNumParameters() {
+		return parameters.capacity();
+	}
+
+	//The kind of the CPT, one of DENSE, NOISY_OR, TREE, CATEGORICAL or NOISY_MAX
+	abstract byte getKind();
+
+	//The number of states of every parent
+	int[] getParentCardinalities() {
+		return parentCardinalities.clone();
+	}
+
+	//A copy of the parameters in the CPT's layout
+	double[] getParameters() {
+		double[] copy = new double[parameters.capacity()];
+		parameters.get(0, copy);
+		return copy;
+	}
+
+	//Recreates a CPT from its kind and parameters
+	static CPT of(byte kind, int[] parentCardinalities, int numStates, double[] parameters) {
+		switch(kind){
+			case DENSE:
+				return new DenseCPT(parentCardinalities, parameters);
+			case NOISY_OR:
+				return new NoisyOrCPT(parameters[0], Arrays.copyOfRange(parameters, 1, parameters.length));
+			case TREE:
+				return new TreeCPT(parentCardinalities.length, parameters);
+			case CATEGORICAL:
+				return new CategoricalCPT(parentCardinalities, numStates, parameters);
+			case NOISY_MAX:
+				return new NoisyMaxCPT(parentCardinalities, numStates, parameters);
+			default:
+				throw new IllegalArgumentException("Unknown CPT kind " + kind);
+		}
+	}
+
+	//The cardinalities of k boolean parents
+	static int[] booleanParents(int k) {
+		int[] cardinalities = new int[k];
+		Arrays.fill(cardinalities, 2);
+		return cardinalities;
+	}
+
+	//Whether CPTs of the kind are indexed by row
+	static boolean isTable(byte kind) {
+		return kind == DENSE || kind == CATEGORICAL;
+	}
+
+	//p(X = state | parents(X)) for a CPT stored at the given offset, where parents[p] is the
+	//index in states of the state of parent p and strides are the row strides of a table
+	static double probability(byte kind, DoubleBuffer parameters, int offset, int numStates, int[] parents, int[] strides,
+			int[] states, int state) {
+		switch(kind){
+			case DENSE: {
+				double p = parameters.get(offset + row(parents, strides, states));
+				return state == 0 ? p : 1 - p;
+			}
+			case CATEGORICAL:
+				return parameters.get(offset + row(parents, strides, states) * numStates + state);
+			case NOISY_OR: {
+				double p = NoisyOrCPT.evaluate(parameters, offset, parents, states);
+				return state == 0 ? p : 1 - p;
+			}
+			case NOISY_MAX:
+				return NoisyMaxCPT.evaluate(parameters, offset, numStates, parents, states, state);
+			default: {
+				double p = TreeCPT.evaluate(parameters, offset, parents, states);
+				return state == 0 ? p : 1 - p;
+			}
+		}
+	}
+
+	//p(X = state | row) for a CPT stored at the given offset, where the row of a noisy-or or
+	//tree CPT has bit (k-1-p) set when parent p is false and a noisy-max CPT decodes the row
+	//with the parent cardinalities it stores
+	static double probability(byte kind, DoubleBuffer parameters, int offset, int numStates, int numParents, int row, int state) {
+		switch(kind){
+			case DENSE: {
+				double p = parameters.get(offset + row);
+				return state == 0 ? p : 1 - p;
+			}
+			case CATEGORICAL:
+				return parameters.get(offset + row * numStates + state);
+			case NOISY_OR: {
+				double p = NoisyOrCPT.evaluate(parameters, offset, numParents, row);
+				return state == 0 ? p : 1 - p;
+			}
+			case NOISY_MAX:
+				return NoisyMaxCPT.evaluate(parameters, offset, numStates, numParents, row, state);
+			default: {
+				double p = TreeCPT.evaluate(parameters, offset, numParents, row);
+				return state == 0 ? p : 1 - p;
+			}
+		}
+	}
+
+	//The full table of a CPT stored at the given offset: p(X = s | row) at row * numStates + s
+	static double[] table(byte kind, DoubleBuffer parameters, int offset, int numStates, int[] parentCardinalities) {
+		long numRows = numRows(parentCardinalities);
+		if(numRows > (1 << MAX_DENSE_PARENTS) / numStates){
+			throw new IllegalStateException("A CPT with " + parentCardinalities.length + " parents is too large for a table");
+		}
+		double[] table = new double[(int)numRows * numStates];
+		for(int row = 0; row < numRows; row++){
+			for(int s = 0; s < numStates; s++){
+				table[row * numStates + s] = probability(kind, parameters, offset, numStates, parentCardinalities.length, row, s);
+			}
+		}
+		return table;
+	}
+
+	//The number of parameters of a CPT stored at the given offset. Throws an
+	//IllegalArgumentException if they are not a valid CPT of the given kind.
+	static int size(byte kind, DoubleBuffer parameters, int offset, int numStates, int[] parentCardinalities) {
+		if(kind == NOISY_OR || kind == TREE){
+			if(numStates != 2){
+				throw new IllegalArgumentException("A noisy-or or tree CPT is over a boolean variable");
+			}
+			for(int c : parentCardinalities){
+				if(c != 2){
+					throw new IllegalArgumentException("A noisy-or or tree CPT needs boolean parents");
+				}
+			}
+		}
+		switch(kind){
+			case DENSE:
+				if(numStates != 2){
+					throw new IllegalArgumentException("A dense CPT is over a boolean variable");
+				}
+				return (int)checkedEntries(parentCardinalities, 1);
+			case CATEGORICAL:
+				return (int)checkedEntries(parentCardinalities, numStates);
+			case NOISY_OR:
+				return parentCardinalities.length + 1;
+			case TREE:
+				return TreeCPT.size(parameters, offset, parentCardinalities.length, new boolean[parentCardinalities.length]);
+			case NOISY_MAX:
+				return NoisyMaxCPT.size(parameters, offset, numStates, parentCardinalities);
+			default:
+				throw new IllegalArgumentException("Unknown CPT kind " + kind);
+		}
+	}
+
+	//The row of the configuration of the parents, a mixed radix number over their states
+	static int row(int[] parents, int[] strides, int[] states) {
+		int row = 0;
+		for(int p = 0; p < parents.length; p++){
+			row += states[parents[p]] * strides[p];
+		}
+		return row;
+	}
+
+	//The row stride of every parent: the product of the cardinalities of the parents after it
+	static int[] strides(int[] parentCardinalities) {
+		checkedEntries(parentCardinalities, 1);
+		int[] strides = new int[parentCardinalities.length];
+		int stride = 1;
+		for(int p = strides.length - 1; p >= 0; p--){
+			strides[p] = stride;
+			stride *= parentCardinalities[p];
+		}
+		return strides;
+	}
+
+	//The number of configurations of the parents, saturating at Long.MAX_VALUE
+	static long numRows(int[] parentCardinalities) {
+		long rows = 1;
+		for(int c : parentCardinalities){
+			rows = rows > Long.MAX_VALUE / c ? Long.MAX_VALUE : rows * c;
+		}
+		return rows;
+	}
+
+	//The number of entries of a table with the given number of entries per row, which must
+	//be at most 2^MAX_DENSE_PARENTS
+	private static long checkedEntries(int[] parentCardinalities, int perRow) {
+		long rows = numRows(parentCardinalities);
+		if(rows > (1L << MAX_DENSE_PARENTS) / perRow){
+			throw new IllegalArgumentException("A table CPT has at most " + (1 << MAX_DENSE_PARENTS) + " entries");
+		}
+		return rows * perRow;
+	}
+
+	//Throws an IllegalArgumentException unless 0 <= p <= 1
+	static void checkProbability(double p) {
+		if(!(p >= 0.0 && p <= 1.0)){
+			throw new IllegalArgumentException("Probability " + p + " is not between 0 and 1");
+		}
+	}
+}
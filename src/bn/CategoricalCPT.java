@@ -0,0 +1,56 @@
+package bn;
+
+/**
+* A CPT of a multi-valued variable that lists p(X = s | parents(X)) for every configuration
+* of the parents and every state s.
+*
+* The table holds one row of numStates probabilities for every configuration of the parents,
+* in row order (see CPT): p(X = s | row) is entry row * numStates + s. Every row sums to 1.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class CategoricalCPT extends CPT {
+	/** How far the probabilities of a row may sum from 1 */
+	public static final double TOLERANCE = 1e-6;
+
+	/**
+	* Creates a categorical CPT
+	*
+	* @param parentCardinalities
+	* 			The number of states of every parent
+	* @param numStates
+	* 			The number of states of the variable, at least 2
+	* @param table
+	* 			The probability of every state for every row, row by row
+	*
+	* @throws IllegalArgumentException if the table does not have numStates entries per row,
+	* 			an entry is not a probability or a row does not sum to 1
+	*/
+	public CategoricalCPT(int[] parentCardinalities, int numStates, double[] table) {
+		super(parentCardinalities.clone(), checkStates(numStates), table.clone());
+		for(int start = 0; start < table.length; start += numStates){
+			double sum = 0;
+			for(int s = 0; s < numStates; s++){
+				checkProbability(table[start + s]);
+				sum += table[start + s];
+			}
+			if(Math.abs(sum - 1) > TOLERANCE){
+				throw new IllegalArgumentException("The probabilities of row " + start / numStates + " sum to " + sum + ", not 1");
+			}
+		}
+	}
+
+	@Override
+	byte getKind() {
+		return CATEGORICAL;
+	}
+
+	private static int checkStates(int numStates) {
+		if(numStates < 2){
+			throw new IllegalArgumentException("A variable needs at least 2 states");
+		}
+		return numStates;
+	}
+}
@@ -0,0 +1,709 @@
+package bn;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* A flattened, array-based form of a Bayesian network used by the samplers.
+*
+* Every node is identified by its position in the topological order and every state of a
+* node by its position in the node's state list (state 0 is true and state 1 false for a
+* boolean node). The parents of a node are stored as an array of node ids and each CPT is
+* stored as the parameters of its kind (see CPT). A table CPT is an array of probabilities
+* indexed by the row of the configuration of the parents, the mixed radix number whose
+* digits are the states of the parents; the row stride of every parent is precomputed. With
+* boolean parents the row is the rank of the configuration, i.e. its position in the order
+* produced by AssignmentIterator (the same order in which the rows of a CPT appear in a .bn
+* file), and bit (k-1-p) is set when parent p is false. Noisy-OR, noisy-MAX and tree CPTs
+* are evaluated from their parameters in O(k) time (times the number of states for noisy-MAX).
+*
+* The CPTs of all nodes are laid out back to back in a single buffer, in node order. The
+* buffer is backed by an array when the network is compiled from nodes, or by a memory
+* mapped file when it is loaded with BinaryNetwork, in which case the CPTs are never
+* copied onto the heap.
+*
+* Drawing a state is the innermost operation of every sampler, so each node whose CPT has at
+* most MAX_SAMPLING_ENTRIES rows (or row entries) also gets a sampling table on the heap,
+* built the first time the node is sampled, so loading a network copies nothing and only
+* the nodes that queries actually sample are ever tabulated. A node with two states stores
+* the threshold ceil(p(X = 0 | row) * 2^53) of every row, and takes state 0 when the top 53
+* bits of a random long are below it; this is exactly the comparison nextDouble() < p,
+* without the conversion. A node with more states stores a Walker alias table of every row:
+* one random long picks a column of the row with its high bits, and the rest of the long
+* decides between the column's state and its alias, so a draw takes O(1) time whatever the
+* number of states. Nodes with larger CPTs, and rows whose probabilities are all 0, are
+* sampled from their parameters.
+*
+* The sampling loops below run over primitive arrays only and do not allocate or hash.
+* They only sample the nodes in the query plan's sample order; every other node is
+* irrelevant to the query.
+*
+* A compiled network is immutable, apart from the sampling tables that fill in as nodes are
+* sampled; a table is the same whichever thread builds it. The states of the nodes are never
+* stored in it but in an assignment, an int[] indexed by node id, that belongs to one
+* sampling call. Several threads may therefore sample the same compiled network at once
+* without locking, as long as each one uses its own random number stream.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class CompiledNetwork {
+	/** The largest number of entries of the sampling table of a node, above which it is sampled from its CPT */
+	public static final int MAX_SAMPLING_ENTRIES = 1 << 20;
+
+	private final String[] names;
+	private final String[][] states; //the names of the states of every node
+	private final int[] cardinalities; //the number of states of every node
+	private final int[][] parents;
+	private final int[][] strides; //the row stride of every parent of a node with a table CPT or a sampling table, null otherwise
+	private final byte[] kinds; //the kind of the CPT of every node, see CPT
+	private final int[] offsets; //the position of the CPT of every node in cpts
+	private final DoubleBuffer cpts; //the parameters of the CPTs of all nodes, back to back
+	private final SamplingTable[] samplingTables; //the sampling table of every node sampled so far
+	private final HashMap<String, Integer> ids;
+
+
+	/**
+	* Compiles the given nodes into array form
+	*
+	* @param nodes
+	* 			The nodes in the Bayesian network
+	*
+	* @pre The nodes are listed in topological order
+	*/
+	public CompiledNetwork(Node[] nodes) {
+		names = new String[nodes.length];
+		states = new String[nodes.length][];
+		cardinalities = new int[nodes.length];
+		parents = new int[nodes.length][];
+		kinds = new byte[nodes.length];
+		offsets = new int[nodes.length];
+		ids = new HashMap<String, Integer>();
+
+		for(int i = 0; i < nodes.length; i++){
+			names[i] = nodes[i].getName();
+			states[i] = nodes[i].getStates();
+			cardinalities[i] = states[i].length;
+			ids.put(names[i], i);
+		}
+
+		long size = 0;
+		for(int i = 0; i < nodes.length; i++){
+			Node[] nodeParents = nodes[i].getParents();
+			parents[i] = new int[nodeParents.length];
+			for(int p = 0; p < nodeParents.length; p++){
+				parents[i][p] = ids.get(nodeParents[p].getName());
+			}
+			kinds[i] = nodes[i].getCPT().getKind();
+			offsets[i] = (int)size;
+			size += nodes[i].getCPT().getNumParameters();
+			if(size > Integer.MAX_VALUE){
+				throw new IllegalArgumentException("The CPTs of the network have more than " + Integer.MAX_VALUE + " parameters");
+			}
+		}
+
+		double[] table = new double[(int)size];
+		for(int i = 0; i < nodes.length; i++){
+			double[] parameters = nodes[i].getCPT().getParameters();
+			System.arraycopy(parameters, 0, table, offsets[i], parameters.length);
+		}
+		cpts = DoubleBuffer.wrap(table);
+		strides = strides();
+		samplingTables = new SamplingTable[nodes.length];
+	}
+
+	/**
+	* Creates a compiled network from its parts, without copying them
+	*
+	* @param names
+	* 			The name of every node, in topological order
+	* @param states
+	* 			The names of the states of every node
+	* @param parents
+	* 			The ids of the parents of every node
+	* @param kinds
+	* 			The kind of the CPT of every node (see CPT)
+	* @param cpts
+	* 			The parameters of the CPTs of all nodes back to back, each in the layout of its kind
+	*
+	* @throws IllegalArgumentException if a parent does not come before its child, a name is
+	* 			repeated, a CPT is invalid or the buffer holds more parameters than the CPTs use
+	*/
+	CompiledNetwork(String[] names, String[][] states, int[][] parents, byte[] kinds, DoubleBuffer cpts) {
+		this.names = names;
+		this.states = states;
+		this.cardinalities = new int[names.length];
+		this.parents = parents;
+		this.kinds = kinds;
+		this.offsets = new int[names.length];
+		this.cpts = cpts;
+		this.ids = new HashMap<String, Integer>();
+
+		long size = 0;
+		for(int i = 0; i < names.length; i++){
+			if(ids.put(names[i], i) != null){
+				throw new IllegalArgumentException("Duplicate node \"" + names[i] + "\"");
+			}
+			cardinalities[i] = states[i].length;
+			if(cardinalities[i] < 2){
+				throw new IllegalArgumentException("Node " + i + " has fewer than 2 states");
+			}
+			for(int p : parents[i]){
+				if(p < 0 || p >= i){
+					throw new IllegalArgumentException("Parent " + p + " of node " + i + " does not come before it");
+				}
+			}
+			offsets[i] = (int)size;
+			try {
+				size += CPT.size(kinds[i], cpts, offsets[i], cardinalities[i], getParentCardinalities(i));
+			}
+			catch(IllegalArgumentException e) {
+				throw new IllegalArgumentException("Node " + i + ": " + e.getMessage(), e);
+			}
+			if(size > cpts.capacity()){
+				throw new IllegalArgumentException("Expected at least " + size + " CPT entries but found " + cpts.capacity());
+			}
+		}
+		if(size != cpts.capacity()){
+			throw new IllegalArgumentException("Expected " + size + " CPT entries but found " + cpts.capacity());
+		}
+		this.strides = strides();
+		this.samplingTables = new SamplingTable[names.length];
+	}
+
+	//The row strides of the parents of every node with a table CPT or a sampling table
+	private int[][] strides() {
+		int[][] strides = new int[names.length][];
+		for(int i = 0; i < names.length; i++){
+			if(CPT.isTable(kinds[i]) || CPT.numRows(getParentCardinalities(i)) <= MAX_SAMPLING_ENTRIES){
+				strides[i] = CPT.strides(getParentCardinalities(i));
+			}
+		}
+		return strides;
+	}
+
+	//The precomputed draws of one node. Its fields are final, so a table built by one thread
+	//is seen whole by every other thread even though it is published without locking.
+	private static final class SamplingTable {
+		private static final SamplingTable NONE = new SamplingTable(null, null);
+
+		private final long[] thresholds; //per row for two states and per row and column otherwise, null if the CPT is too large
+		private final int[] aliases; //the alias of every column for more than two states, -1 for rows without probability
+
+		private SamplingTable(long[] thresholds, int[] aliases) {
+			this.thresholds = thresholds;
+			this.aliases = aliases;
+		}
+	}
+
+	//The sampling table of a node, built on its first draw. Two threads may both build it,
+	//in which case they build the same table.
+	private SamplingTable samplingTable(int id) {
+		SamplingTable table = samplingTables[id];
+		if(table == null){
+			table = buildSamplingTable(id);
+			samplingTables[id] = table;
+		}
+		return table;
+	}
+
+	private SamplingTable buildSamplingTable(int i) {
+		int k = cardinalities[i];
+		if(CPT.numRows(getParentCardinalities(i)) > MAX_SAMPLING_ENTRIES / (k == 2 ? 1 : k)){
+			return SamplingTable.NONE;
+		}
+		double[] table = getTable(i);
+		if(k == 2){
+			long[] thresholds = new long[table.length / 2];
+			for(int row = 0; row < thresholds.length; row++){
+				thresholds[row] = (long)Math.ceil(table[2 * row] * 0x1p53);
+			}
+			return new SamplingTable(thresholds, null);
+		}
+		long[] thresholds = new long[table.length];
+		int[] aliases = new int[table.length];
+		double[] scaled = new double[k];
+		int[] small = new int[k];
+		int[] large = new int[k];
+		for(int start = 0; start < table.length; start += k){
+			double sum = 0;
+			for(int s = 0; s < k; s++){
+				sum += table[start + s];
+			}
+			if(sum > 0){
+				alias(table, start, k, sum, scaled, small, large, thresholds, aliases);
+			}
+			else{
+				//every column falls through to an alias of -1, which draws from the CPT
+				Arrays.fill(aliases, start, start + k, -1);
+			}
+		}
+		return new SamplingTable(thresholds, aliases);
+	}
+
+	//Builds the alias table of one row with Vose's method: every state gets a column of mass
+	//1 / k, and a state that needs less than a column shares it with a state that needs more
+	private static void alias(double[] table, int start, int k, double sum, double[] scaled, int[] small, int[] large,
+			long[] threshold, int[] alias) {
+		int numSmall = 0, numLarge = 0;
+		for(int s = 0; s < k; s++){
+			scaled[s] = table[start + s] / sum * k;
+			if(scaled[s] < 1){
+				small[numSmall++] = s;
+			}
+			else{
+				large[numLarge++] = s;
+			}
+		}
+		while(numSmall > 0 && numLarge > 0){
+			int s = small[--numSmall];
+			int l = large[numLarge - 1];
+			threshold[start + s] = (long)Math.ceil(scaled[s] * 0x1p53);
+			alias[start + s] = l;
+			scaled[l] -= 1 - scaled[s];
+			if(scaled[l] < 1){
+				numLarge--;
+				small[numSmall++] = l;
+			}
+		}
+		//whatever is left fills its own column, up to rounding
+		while(numLarge > 0){
+			int l = large[--numLarge];
+			threshold[start + l] = 1L << 53;
+			alias[start + l] = l;
+		}
+		while(numSmall > 0){
+			int s = small[--numSmall];
+			threshold[start + s] = 1L << 53;
+			alias[start + s] = s;
+		}
+	}
+
+
+	/**
+	* Returns the number of nodes in the network
+	* @return The number of nodes in the network
+	*/
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	* Returns the id of the node with the given name
+	*
+	* @param name
+	* 			The name of a random variable
+	* @return The position of the node in topological order, or -1 if there is no such node
+	*/
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	* Returns the name of the node with the given id
+	* @param id
+	* 			The id of a node
+	* @return The name of the random variable
+	*/
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	* Returns the number of states of a node
+	* @param id
+	* 			The id of a node
+	* @return The number of states, 2 for a boolean node
+	*/
+	public int getCardinality(int id) {
+		return cardinalities[id];
+	}
+
+	/**
+	* Returns the name of a state of a node
+	* @param id
+	* 			The id of a node
+	* @param state
+	* 			A state of the node
+	* @return The name of the state, e.g. "true" or "false" for a boolean node
+	*/
+	public String getStateName(int id, int state) {
+		return states[id][state];
+	}
+
+	/**
+	* Returns the state of a node with the given name
+	*
+	* @param id
+	* 			The id of a node
+	* @param name
+	* 			The name of a state
+	* @return The state, or -1 if the node has no such state
+	*/
+	public int getStateIndex(int id, String name) {
+		for(int s = 0; s < states[id].length; s++){
+			if(states[id][s].equals(name)){
+				return s;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	* Returns the ids of the parents of a node
+	* @param id
+	* 			The id of a node
+	* @return The ids of the node's parents, in CPT order
+	*/
+	public int[] getParents(int id) {
+		return parents[id];
+	}
+
+	/**
+	* Returns the CPT of a node with two states as a dense table indexed by parent configuration
+	* @param id
+	* 			The id of a node
+	* @return p(X = state 0 | parents(X)) (for a boolean node, p(X = true | parents(X))) for
+	* 			every row
+	*
+	* @throws IllegalStateException if the node does not have two states or the table would
+	* 			have more than 2^CPT.MAX_DENSE_PARENTS entries
+	*/
+	public double[] getCPT(int id) {
+		if(cardinalities[id] != 2){
+			throw new IllegalStateException("Node \"" + names[id] + "\" has " + cardinalities[id] + " states, use getTable()");
+		}
+		double[] table = getTable(id);
+		double[] cpt = new double[table.length / 2];
+		for(int row = 0; row < cpt.length; row++){
+			cpt[row] = table[2 * row];
+		}
+		return cpt;
+	}
+
+	/**
+	* Returns the CPT of a node as a table of every state for every row
+	* @param id
+	* 			The id of a node
+	* @return p(X = s | row) at row * getCardinality(id) + s
+	*
+	* @throws IllegalStateException if the table would have more than 2^CPT.MAX_DENSE_PARENTS entries
+	*/
+	public double[] getTable(int id) {
+		return CPT.table(kinds[id], cpts, offsets[id], cardinalities[id], getParentCardinalities(id));
+	}
+
+	/**
+	* Returns one entry of the CPT of a node. For CPTs that are not tables this evaluates the
+	* CPT for the configuration; getProbability(id, states, state) does so without decoding
+	* the row.
+	*
+	* @param id
+	* 			The id of a node
+	* @param row
+	* 			The row of a configuration of the node's parents
+	* @param state
+	* 			A state of the node
+	* @return p(X = state | parents(X)) for that configuration
+	*/
+	public double getProbability(int id, int row, int state) {
+		return CPT.probability(kinds[id], cpts, offsets[id], cardinalities[id], parents[id].length, row, state);
+	}
+
+	/**
+	* Returns p(X = state | parents(X)) where the parents take the given states
+	*
+	* @param id
+	* 			The id of a node
+	* @param assignment
+	* 			The current state of every node, indexed by id
+	* @param state
+	* 			A state of the node
+	* @return The probability of the node taking the state
+	*/
+	public double getProbability(int id, int[] assignment, int state) {
+		int[] pa = parents[id];
+		int[] stride = strides[id];
+		switch(kinds[id]){
+			case CPT.DENSE: {
+				int row = 0;
+				for(int p = 0; p < pa.length; p++){
+					row += assignment[pa[p]] * stride[p];
+				}
+				double probability = cpts.get(offsets[id] + row);
+				return state == 0 ? probability : 1 - probability;
+			}
+			case CPT.CATEGORICAL: {
+				int row = 0;
+				for(int p = 0; p < pa.length; p++){
+					row += assignment[pa[p]] * stride[p];
+				}
+				return cpts.get(offsets[id] + row * cardinalities[id] + state);
+			}
+			default:
+				return CPT.probability(kinds[id], cpts, offsets[id], cardinalities[id], pa, stride, assignment, state);
+		}
+	}
+
+	//A copy of the CPT of a node in its own representation
+	CPT cpt(int id) {
+		return CPT.of(kinds[id], getParentCardinalities(id), cardinalities[id], getParameters(id));
+	}
+
+	//The kind of the CPT of a node
+	byte getKind(int id) {
+		return kinds[id];
+	}
+
+	//The number of states of every parent of a node
+	int[] getParentCardinalities(int id) {
+		int[] parentCardinalities = new int[parents[id].length];
+		for(int p = 0; p < parentCardinalities.length; p++){
+			parentCardinalities[p] = cardinalities[parents[id][p]];
+		}
+		return parentCardinalities;
+	}
+
+	//A copy of the parameters of the CPT of a node
+	double[] getParameters(int id) {
+		int end = id + 1 < offsets.length ? offsets[id + 1] : cpts.capacity();
+		double[] parameters = new double[end - offsets[id]];
+		cpts.get(offsets[id], parameters);
+		return parameters;
+	}
+
+	/**
+	* Samples a state for a node given the states of its parents and stores it in the assignment
+	*
+	* @param id
+	* 			The id of a node
+	* @param assignment
+	* 			The current state of every node, indexed by id; assignment[id] is overwritten
+	* @param random
+	* 			The random number stream
+	* @return The sampled state
+	*
+	* @pre The parents of the node have already been assigned
+	*/
+	public int sample(int id, int[] assignment, RandomSource random) {
+		SamplingTable table = samplingTable(id);
+		long[] threshold = table.thresholds;
+		int state;
+		if(threshold == null){
+			state = sampleCPT(id, assignment, random);
+		}
+		else{
+			int[] pa = parents[id];
+			int[] stride = strides[id];
+			int row = 0;
+			for(int p = 0; p < pa.length; p++){
+				row += assignment[pa[p]] * stride[p];
+			}
+			long r = random.nextLong();
+			int k = cardinalities[id];
+			if(k == 2){
+				state = (r >>> 11) < threshold[row] ? 0 : 1;
+			}
+			else{
+				//the high 64 bits of the unsigned product r * k pick the column and the low bits,
+				//uniform within the column, are compared with its threshold
+				int column = (int)(Math.multiplyHigh(r, k) + ((r >> 63) & k));
+				int entry = row * k + column;
+				state = ((r * k) >>> 11) < threshold[entry] ? column : table.aliases[entry];
+				if(state < 0){
+					state = sampleCPT(id, assignment, random);
+				}
+			}
+		}
+		assignment[id] = state;
+		return state;
+	}
+
+	//Samples a state of a node without a sampling table by inverting the cumulative
+	//distribution of its CPT row; the last state takes whatever rounding leaves
+	private int sampleCPT(int id, int[] assignment, RandomSource random) {
+		double u = random.nextDouble();
+		int last = cardinalities[id] - 1;
+		int state = 0;
+		double sum = 0;
+		while(state < last){
+			double p = getProbability(id, assignment, state);
+			sum += p;
+			if((u -= p) < 0){
+				break;
+			}
+			state++;
+		}
+		//only a row without probability falls through every state with nothing to draw
+		if(state == last && !(sum + getProbability(id, assignment, last) > 0)){
+			throw new IllegalStateException("The CPT row of \"" + names[id] + "\" has no probability");
+		}
+		return state;
+	}
+
+
+	/**
+	* Returns an unnormalized tally of samples drawn by direct sampling
+	*
+	* @param plan
+	* 			The query resolved against this network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @return The tally of the configurations of the query variables
+	*/
+	public WeightedSet directSample(QueryPlan plan, int numSamples, RandomSource random) {
+		WeightedSet tally = plan.newTally();
+		directSample(plan, numSamples, random, tally);
+		return tally;
+	}
+
+	/**
+	* Returns an unnormalized tally of samples drawn by rejection sampling
+	*
+	* @param plan
+	* 			The query resolved against this network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @return The tally of the configurations of the query variables
+	*/
+	public WeightedSet rejectionSample(QueryPlan plan, int numSamples, RandomSource random) {
+		WeightedSet tally = plan.newTally();
+		rejectionSample(plan, numSamples, random, tally);
+		return tally;
+	}
+
+	/**
+	* Returns the unnormalized total weight of samples drawn by likelihood weighting
+	*
+	* @param plan
+	* 			The query resolved against this network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @return The total weight of the configurations of the query variables
+	*/
+	public WeightedSet likelihoodWeighting(QueryPlan plan, int numSamples, RandomSource random) {
+		WeightedSet tally = plan.newTally();
+		likelihoodWeighting(plan, numSamples, random, tally);
+		return tally;
+	}
+
+	/**
+	* Tallies samples drawn by direct sampling
+	*
+	* @param plan
+	* 			The query resolved against this network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that every accepted sample is added to
+	* @return The number of accepted samples, i.e. the sum of their squared weights
+	*/
+	public double directSample(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		long[] queryStrides = plan.getQueryStrides();
+		int[] order = plan.getSampleOrder();
+		int[] assignment = new int[names.length];
+		double sumOfSquares = 0;
+
+		for(int j = 0; j < numSamples; j++){
+			long rank = 0;
+			for(int k = 0; k < order.length; k++){
+				int i = order[k];
+				rank += sample(i, assignment, random) * queryStrides[i];
+			}
+			tally.increment(rank, 1);
+			sumOfSquares += 1;
+		}
+		return sumOfSquares;
+	}
+
+	/**
+	* Tallies samples drawn by rejection sampling
+	*
+	* @param plan
+	* 			The query resolved against this network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that every accepted sample is added to
+	* @return The number of accepted samples, i.e. the sum of their squared weights
+	*/
+	public double rejectionSample(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		long[] queryStrides = plan.getQueryStrides();
+		int[] order = plan.getSampleOrder();
+		int[] evidence = plan.getEvidence();
+		int[] assignment = new int[names.length];
+		double sumOfSquares = 0;
+
+		sampling:
+		for(int j = 0; j < numSamples; j++){
+			long rank = 0;
+			for(int k = 0; k < order.length; k++){
+				int i = order[k];
+				int state = sample(i, assignment, random);
+				if(evidence[i] >= 0 && evidence[i] != state){
+					continue sampling; // Abandon the sample and start over
+				}
+				rank += state * queryStrides[i];
+			}
+			tally.increment(rank, 1);
+			sumOfSquares += 1;
+		}
+		return sumOfSquares;
+	}
+
+	/**
+	* Tallies samples drawn by likelihood weighting
+	*
+	* @param plan
+	* 			The query resolved against this network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that the weight of every sample is added to
+	* @return The sum of the squared sample weights, for computing the effective sample size
+	*/
+	public double likelihoodWeighting(QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		long[] queryStrides = plan.getQueryStrides();
+		int[] order = plan.getSampleOrder();
+		int[] evidence = plan.getEvidence();
+		int[] assignment = new int[names.length];
+		double sumOfSquares = 0;
+
+		for(int j = 0; j < numSamples; j++){
+			double weight = 1;
+			long rank = 0;
+			for(int k = 0; k < order.length; k++){
+				int i = order[k];
+				if(evidence[i] >= 0){
+					//clamp the node to the evidence and weigh by its likelihood
+					weight *= getProbability(i, assignment, evidence[i]);
+					assignment[i] = evidence[i];
+				}
+				else{
+					rank += sample(i, assignment, random) * queryStrides[i];
+				}
+			}
+			tally.increment(rank, weight);
+			sumOfSquares += weight * weight;
+		}
+		return sumOfSquares;
+	}
+}
@@ -0,0 +1,59 @@
+package bn;
+
+/**
+* A CPT that lists p(X = true | parents(X)) for every configuration of the parents.
+*
+* The table is indexed by row (see CPT), the order in which the rows of a CPT appear in a
+* .bn file. With boolean parents, bit (k-1-p) of the row is set when parent p is false.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class DenseCPT extends CPT {
+
+	/**
+	* Creates a dense CPT over boolean parents
+	*
+	* @param table
+	* 			p(X = true | parents(X)) for every configuration of the parents, in rank order
+	*
+	* @throws IllegalArgumentException if the length of the table is not a power of two or an
+	* 			entry is not a probability
+	*/
+	public DenseCPT(double[] table) {
+		this(booleanParents(numBooleanParents(table.length)), table);
+	}
+
+	/**
+	* Creates a dense CPT over parents with any number of states
+	*
+	* @param parentCardinalities
+	* 			The number of states of every parent
+	* @param table
+	* 			p(X = true | parents(X)) for every row (see CPT)
+	*
+	* @throws IllegalArgumentException if the table does not have one entry per row or an
+	* 			entry is not a probability
+	*/
+	public DenseCPT(int[] parentCardinalities, double[] table) {
+		super(parentCardinalities.clone(), 2, table.clone());
+		for(double p : table){
+			checkProbability(p);
+		}
+	}
+
+	@Override
+	byte getKind() {
+		return DENSE;
+	}
+
+	//k for a table of 2^k entries
+	private static int numBooleanParents(int length) {
+		int k = Integer.numberOfTrailingZeros(length);
+		if(length < 1 || length != 1 << k || k > MAX_DENSE_PARENTS){
+			throw new IllegalArgumentException("A dense CPT needs one entry per configuration of its parents, not " + length);
+		}
+		return k;
+	}
+}
@@ -0,0 +1,121 @@
+package bn;
+
+import java.util.BitSet;
+
+/**
+* The interaction graph of a set of variables as they are eliminated one at a time, shared by
+* variable elimination and the triangulation of the junction tree.
+*
+* Eliminating a variable connects all of its neighbours and removes it from the graph. The
+* fill-in of every variable, the number of edges its elimination would add, is kept between
+* steps: an elimination only changes the fill-in of the eliminated variable's neighbours and
+* of their neighbours, so only those are recounted. Picking the next variable in min-fill
+* order is then a scan over the fill-in counts instead of a recount of the whole graph.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+class EliminationGraph {
+
+	private final BitSet[] adjacent; //the neighbours of every variable that has not been eliminated
+	private final BitSet eliminated;
+	private final int[] fill; //the fill-in of every variable, valid unless the variable is dirty
+	private final BitSet dirty; //variables whose fill-in must be recounted
+	private final BitSet scratch = new BitSet();
+
+	/**
+	* Creates a graph over the variables 0 to n - 1 without edges
+	*
+	* @param n
+	* 			The number of variables
+	*/
+	EliminationGraph(int n) {
+		adjacent = new BitSet[n];
+		for(int v = 0; v < n; v++){
+			adjacent[v] = new BitSet(n);
+		}
+		eliminated = new BitSet(n);
+		fill = new int[n];
+		dirty = new BitSet(n);
+	}
+
+	/**
+	* Connects every pair of the given variables, e.g. the variables of a factor
+	*
+	* @param vars
+	* 			Variable ids
+	*/
+	void connect(int[] vars) {
+		for(int a : vars){
+			for(int b : vars){
+				if(a != b){
+					adjacent[a].set(b);
+				}
+			}
+			dirty.set(a);
+			dirty.or(adjacent[a]);
+		}
+	}
+
+	/**
+	* Returns the candidate with the smallest fill-in, the lowest id among ties
+	*
+	* @param candidates
+	* 			The variables that may be eliminated next, indexed by id
+	* @return The next variable to eliminate, or -1 if no candidate is left
+	*/
+	int next(boolean[] candidates) {
+		for(int v = dirty.nextSetBit(0); v >= 0; v = dirty.nextSetBit(v + 1)){
+			fill[v] = countFill(v);
+		}
+		dirty.clear();
+
+		int best = -1;
+		for(int v = 0; v < fill.length; v++){
+			if(candidates[v] && !eliminated.get(v) && (best < 0 || fill[v] < fill[best])){
+				best = v;
+			}
+		}
+		return best;
+	}
+
+	/**
+	* Eliminates a variable, connecting all of its neighbours
+	*
+	* @param v
+	* 			The id of a variable that has not been eliminated
+	* @return The neighbours of the variable before its elimination, in ascending order
+	*/
+	int[] eliminate(int v) {
+		BitSet neighbours = adjacent[v];
+		int[] result = neighbours.stream().toArray();
+		for(int a : result){
+			adjacent[a].or(neighbours);
+			adjacent[a].clear(a);
+			adjacent[a].clear(v);
+		}
+		for(int a : result){
+			dirty.set(a);
+			dirty.or(adjacent[a]);
+		}
+		dirty.clear(v);
+		eliminated.set(v);
+		adjacent[v] = new BitSet(0);
+		return result;
+	}
+
+	//The number of pairs of neighbours of v that are not adjacent to each other
+	private int countFill(int v) {
+		BitSet neighbours = adjacent[v];
+		int missing = 0;
+		for(int a = neighbours.nextSetBit(0); a >= 0; a = neighbours.nextSetBit(a + 1)){
+			scratch.clear();
+			scratch.or(neighbours);
+			scratch.andNot(adjacent[a]);
+			scratch.clear(a);
+			missing += scratch.cardinality();
+		}
+		return missing / 2;
+	}
+}
@@ -0,0 +1,120 @@
+package bn;
+
+import util.BitVector;
+import util.WeightedSet;
+
+/**
+* An approximate answer to a query together with its estimated error.
+*
+* The standard error of every outcome is the standard error of a proportion,
+* sqrt(p (1 - p) / ESS), where ESS = (sum of weights)^2 / (sum of squared weights) is the
+* effective sample size. ESS equals the number of accepted samples when every sample has
+* weight 1 and shrinks as likelihood weights become uneven.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class Estimate {
+
+	private WeightedSet distribution;
+	private long numSamples;
+	private double effectiveSampleSize;
+	private boolean converged;
+
+	/**
+	* Creates an estimate from an unnormalized tally
+	*
+	* @param tally
+	* 			The total weight of every configuration of the query variables; normalized in place
+	* @param sumOfSquares
+	* 			The sum of the squared weights of the samples in the tally
+	* @param numSamples
+	* 			The number of samples drawn
+	* @param converged
+	* 			Whether the target precision was reached
+	*/
+	public Estimate(WeightedSet tally, double sumOfSquares, long numSamples, boolean converged) {
+		double total = tally.getTotalWeight();
+		this.effectiveSampleSize = sumOfSquares > 0 ? total * total / sumOfSquares : 0.0;
+		this.numSamples = numSamples;
+		this.converged = converged;
+		if(total > 0){
+			tally.normalizeWeights();
+		}
+		this.distribution = tally;
+	}
+
+
+	/**
+	* Returns the estimated distribution
+	* @return A probability distribution over the query variables
+	*/
+	public WeightedSet getDistribution() {
+		return distribution;
+	}
+
+	/**
+	* Returns the standard error of the estimated probability of an event
+	* @param event
+	* 			A configuration of boolean query variables
+	* @return The standard error of its probability
+	*/
+	public double getStandardError(BitVector event) {
+		return standardError(distribution.getWeight(event));
+	}
+
+	/**
+	* Returns the standard error of the estimated probability of an outcome, which may be a
+	* configuration of variables with any number of states
+	* @param rank
+	* 			The rank of a configuration of the query variables (see QueryPlan)
+	* @return The standard error of its probability
+	*/
+	public double getStandardError(long rank) {
+		return standardError(distribution.getWeight(rank));
+	}
+
+	/**
+	* Returns the largest standard error over all outcomes
+	* @return The largest standard error, or infinity if no sample carried any weight
+	*/
+	public double getMaxStandardError() {
+		if(effectiveSampleSize == 0){
+			return Double.POSITIVE_INFINITY;
+		}
+		double max = 0;
+		for(long rank : distribution.getEventRanks()){
+			max = Math.max(max, standardError(distribution.getWeight(rank)));
+		}
+		return max;
+	}
+
+	/**
+	* Returns the number of samples drawn, including rejected ones
+	* @return The number of samples drawn
+	*/
+	public long getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	* Returns the effective sample size of the estimate
+	* @return (sum of weights)^2 / (sum of squared weights)
+	*/
+	public double getEffectiveSampleSize() {
+		return effectiveSampleSize;
+	}
+
+	/**
+	* Returns whether the target precision was reached within the budget
+	* @return True if the estimate converged, false if the budget ran out first
+	*/
+	public boolean isConverged() {
+		return converged;
+	}
+
+	private double standardError(double p) {
+		return effectiveSampleSize == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(p * (1 - p) / effectiveSampleSize);
+	}
+}
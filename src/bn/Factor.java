@@ -0,0 +1,347 @@
+package bn;
+
+import java.util.Arrays;
+
+/**
+* A factor over a set of discrete random variables, i.e. a table that maps every
+* configuration of its variables to a non-negative number.
+*
+* The variables are node ids kept in ascending order, each with its number of states.
+* Configurations are indexed the same way as the CPTs of a CompiledNetwork: the index is
+* the mixed radix number whose digits are the states of the variables, the first variable
+* being the most significant. With k boolean variables, bit (k-1-j) of the index is set
+* when variable j is false.
+*
+* A factor holds at most MAX_SIZE values. Creating a larger one, e.g. as the product of two
+* factors during elimination, throws an IllegalStateException before anything is allocated.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class Factor {
+	/** The largest number of values of a factor */
+	public static final int MAX_SIZE = 1 << CPT.MAX_DENSE_PARENTS;
+
+	private final int[] vars;
+	private final int[] cards; //the number of states of every variable
+	private final int[] strides; //the amount every variable contributes to the index per state
+	private final double[] values;
+
+	/**
+	* Creates a factor over boolean variables with the given table
+	*
+	* @param vars
+	* 			The ids of the variables in ascending order
+	* @param values
+	* 			The value of every configuration of the variables
+	*
+	* @throws IllegalArgumentException if the table does not have 2^vars.length entries
+	*/
+	public Factor(int[] vars, double[] values) {
+		this(vars, CPT.booleanParents(vars.length), values);
+	}
+
+	/**
+	* Creates a factor with the given table
+	*
+	* @param vars
+	* 			The ids of the variables in ascending order
+	* @param cards
+	* 			The number of states of every variable
+	* @param values
+	* 			The value of every configuration of the variables
+	*
+	* @throws IllegalArgumentException if the table does not have an entry for every configuration
+	* @throws IllegalStateException if the variables have more than MAX_SIZE configurations
+	*/
+	public Factor(int[] vars, int[] cards, double[] values) {
+		int size = size(cards);
+		this.strides = CPT.strides(cards);
+		if(values.length != size) {
+			throw new IllegalArgumentException("Factor over " + vars.length + " variables needs " + size + " values");
+		}
+		this.vars = vars;
+		this.cards = cards;
+		this.values = values;
+	}
+
+	/**
+	* Creates a factor that is 1 for every configuration of the given variables
+	*
+	* @param vars
+	* 			The ids of the variables in ascending order
+	* @param cards
+	* 			The number of states of every variable
+	* @return The unit factor
+	*
+	* @throws IllegalStateException if the variables have more than MAX_SIZE configurations
+	*/
+	public static Factor unit(int[] vars, int[] cards) {
+		double[] values = new double[size(cards)];
+		Arrays.fill(values, 1.0);
+		return new Factor(vars, cards, values);
+	}
+
+	/**
+	* Creates the factor p(X | parents(X)) for a node of a compiled network
+	*
+	* @param network
+	* 			The compiled network
+	* @param id
+	* 			The id of the node
+	* @return A factor over the node and its parents
+	*
+	* @throws IllegalStateException if the CPT is too large to expand into a table
+	*/
+	public static Factor fromCPT(CompiledNetwork network, int id) {
+		double[] cpt = network.getTable(id); //first, so that a CPT too large for a table throws IllegalStateException
+		int[] parents = network.getParents(id);
+		int[] rowStrides = CPT.strides(network.getParentCardinalities(id));
+		int numStates = network.getCardinality(id);
+
+		int[] vars = new int[parents.length + 1];
+		for(int p = 0; p < parents.length; p++){
+			vars[p] = parents[p];
+		}
+		vars[parents.length] = id;
+		Arrays.sort(vars);
+
+		//how much a state of every variable of the factor moves the index into the table
+		int k = vars.length;
+		int[] cards = new int[k];
+		int[] tableStrides = new int[k];
+		for(int j = 0; j < k; j++){
+			cards[j] = network.getCardinality(vars[j]);
+			if(vars[j] == id){
+				tableStrides[j] = 1;
+			}
+			for(int p = 0; p < parents.length; p++){
+				if(vars[j] == parents[p]){
+					tableStrides[j] = rowStrides[p] * numStates;
+				}
+			}
+		}
+
+		double[] values = new double[size(cards)];
+		int[] states = new int[k];
+		int entry = 0;
+		for(int index = 0; index < values.length; index++){
+			values[index] = cpt[entry];
+			entry = next(states, cards, tableStrides, entry);
+		}
+		return new Factor(vars, cards, values);
+	}
+
+
+	/**
+	* Returns the ids of the variables of the factor
+	* @return The variable ids in ascending order
+	*/
+	public int[] getVariables() {
+		return vars;
+	}
+
+	/**
+	* Returns the number of states of the variables of the factor
+	* @return The cardinality of every variable, in the order of getVariables()
+	*/
+	public int[] getCardinalities() {
+		return cards;
+	}
+
+	/**
+	* Returns the table of the factor
+	* @return The value of every configuration, indexed as described above
+	*/
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	* Returns the position of a variable in this factor
+	* @param var
+	* 			A variable id
+	* @return The position of the variable, or -1 if the factor does not mention it
+	*/
+	public int indexOf(int var) {
+		for(int j = 0; j < vars.length; j++){
+			if(vars[j] == var){
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	* Returns the pointwise product of this factor and another
+	* @param other
+	* 			Another factor
+	* @return A factor over the union of both variable sets
+	*
+	* @throws IllegalStateException if the union has more than MAX_SIZE configurations
+	*/
+	public Factor multiply(Factor other) {
+		//merge the two sorted variable lists
+		int[] union = new int[vars.length + other.vars.length];
+		int[] unionCards = new int[union.length];
+		int k = 0, a = 0, b = 0;
+		while(a < vars.length || b < other.vars.length){
+			if(b == other.vars.length || (a < vars.length && vars[a] < other.vars[b])){
+				unionCards[k] = cards[a];
+				union[k++] = vars[a++];
+			}
+			else if(a == vars.length || other.vars[b] < vars[a]){
+				unionCards[k] = other.cards[b];
+				union[k++] = other.vars[b++];
+			}
+			else{
+				unionCards[k] = cards[a];
+				union[k++] = vars[a++];
+				b++;
+			}
+		}
+		int[] resultVars = Arrays.copyOf(union, k);
+		int[] resultCards = Arrays.copyOf(unionCards, k);
+
+		//stride in each operand's index for every variable of the result (0 if absent)
+		int[] stridesA = new int[k];
+		int[] stridesB = new int[k];
+		for(int j = 0; j < k; j++){
+			int ja = indexOf(resultVars[j]);
+			int jb = other.indexOf(resultVars[j]);
+			stridesA[j] = ja < 0 ? 0 : strides[ja];
+			stridesB[j] = jb < 0 ? 0 : other.strides[jb];
+		}
+
+		double[] result = new double[size(resultCards)];
+		int[] statesA = new int[k];
+		int[] statesB = new int[k];
+		int ia = 0, ib = 0;
+		for(int index = 0; index < result.length; index++){
+			result[index] = values[ia] * other.values[ib];
+			ia = next(statesA, resultCards, stridesA, ia);
+			ib = next(statesB, resultCards, stridesB, ib);
+		}
+		return new Factor(resultVars, resultCards, result);
+	}
+
+	/**
+	* Sums a variable out of the factor
+	* @param var
+	* 			The id of a variable of this factor
+	* @return A factor over the remaining variables
+	*/
+	public Factor sumOut(int var) {
+		int j = indexOf(var);
+		int card = cards[j];
+		int stride = strides[j];
+		double[] result = new double[values.length / card];
+		for(int high = 0; high < result.length; high += stride){
+			for(int low = 0; low < stride; low++){
+				int full = high * card + low;
+				double sum = 0;
+				for(int s = 0; s < card; s++){
+					sum += values[full + s * stride];
+				}
+				result[high + low] = sum;
+			}
+		}
+		return new Factor(without(vars, j), without(cards, j), result);
+	}
+
+	/**
+	* Fixes a variable to an observed state
+	* @param var
+	* 			The id of a variable of this factor
+	* @param state
+	* 			The observed state
+	* @return A factor over the remaining variables
+	*/
+	public Factor restrict(int var, int state) {
+		int j = indexOf(var);
+		int card = cards[j];
+		int stride = strides[j];
+		double[] result = new double[values.length / card];
+		for(int high = 0; high < result.length; high += stride){
+			for(int low = 0; low < stride; low++){
+				result[high + low] = values[high * card + state * stride + low];
+			}
+		}
+		return new Factor(without(vars, j), without(cards, j), result);
+	}
+
+	/**
+	* Zeroes every configuration that disagrees with an observed state, keeping the variable
+	* @param var
+	* 			The id of a variable of this factor
+	* @param state
+	* 			The observed state
+	* @return A factor over the same variables
+	*/
+	public Factor observe(int var, int state) {
+		int j = indexOf(var);
+		int card = cards[j];
+		int stride = strides[j];
+		double[] result = new double[values.length];
+		for(int index = 0; index < values.length; index++){
+			result[index] = index / stride % card == state ? values[index] : 0;
+		}
+		return new Factor(vars, cards, result);
+	}
+
+	/**
+	* Sums out every variable that is not in the given set
+	* @param keep
+	* 			The ids of the variables to keep
+	* @return A factor over the variables of this factor that are also in keep
+	*/
+	public Factor marginalize(int[] keep) {
+		Factor result = this;
+		for(int v : vars){
+			boolean kept = false;
+			for(int k : keep){
+				kept |= k == v;
+			}
+			if(!kept){
+				result = result.sumOut(v);
+			}
+		}
+		return result;
+	}
+
+	//Advances the states of a configuration to the next index, last variable fastest, and
+	//moves an index into another table along with them by the given strides
+	static int next(int[] states, int[] cards, int[] strides, int index) {
+		for(int j = states.length - 1; j >= 0; j--){
+			index += strides[j];
+			if(++states[j] < cards[j]){
+				break;
+			}
+			index -= cards[j] * strides[j];
+			states[j] = 0;
+		}
+		return index;
+	}
+
+	//The number of configurations of variables with the given cardinalities, checked against
+	//MAX_SIZE before a table of that size is allocated
+	private static int size(int[] cards) {
+		long size = CPT.numRows(cards);
+		if(size > MAX_SIZE){
+			throw new IllegalStateException("A factor over " + cards.length + " variables is too large (more than " + MAX_SIZE + " values)");
+		}
+		return (int)size;
+	}
+
+	//The array without the element at position j
+	private static int[] without(int[] array, int j) {
+		int[] result = new int[array.length - 1];
+		for(int i = 0, r = 0; i < array.length; i++){
+			if(i != j){
+				result[r++] = array[i];
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,76 @@
+package bn;
+
+import util.WeightedSet;
+
+/**
+* The answer of a Gibbs sampler together with its convergence diagnostic.
+*
+* The potential scale reduction factor R-hat (Gelman and Rubin) compares the spread of
+* the per-chain estimates of every outcome of the query with the spread within the chains.
+* Values close to 1 (say, below 1.1) indicate that the chains have mixed; larger values
+* mean the chains disagree and more burn-in or more samples are needed.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class GibbsResult {
+
+	private WeightedSet distribution;
+	private long numSamples;
+	private int numChains;
+	private double rHat;
+
+	/**
+	* Creates a result
+	*
+	* @param distribution
+	* 			The distribution over the query variables, pooled over all chains
+	* @param numSamples
+	* 			The number of samples kept across all chains
+	* @param numChains
+	* 			The number of chains
+	* @param rHat
+	* 			The largest R-hat over the outcomes of the query (NaN with a single chain or
+	* 			impossible evidence)
+	*/
+	public GibbsResult(WeightedSet distribution, long numSamples, int numChains, double rHat) {
+		this.distribution = distribution;
+		this.numSamples = numSamples;
+		this.numChains = numChains;
+		this.rHat = rHat;
+	}
+
+
+	/**
+	* Returns the estimated distribution
+	* @return A probability distribution over the query variables
+	*/
+	public WeightedSet getDistribution() {
+		return distribution;
+	}
+
+	/**
+	* Returns the number of samples kept after burn-in and thinning
+	* @return The number of samples across all chains
+	*/
+	public long getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	* Returns the number of chains
+	* @return The number of chains
+	*/
+	public int getNumChains() {
+		return numChains;
+	}
+
+	/**
+	* Returns the largest potential scale reduction factor over the outcomes of the query
+	* @return R-hat, or NaN if only one chain was run or no chain reached a possible state
+	*/
+	public double getRHat() {
+		return rHat;
+	}
+}
@@ -0,0 +1,364 @@
+package bn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* Approximates queries by Gibbs sampling, a Markov chain Monte Carlo method.
+*
+* The evidence variables are fixed and every other relevant variable is resampled in turn
+* from its distribution over all of its states given its Markov blanket:
+*
+* 		p(X = x | mb(X)) is proportional to p(X = x | parents(X)) * product over children C of p(C | parents(C))
+*
+* Unlike rejection sampling and likelihood weighting, no sample is wasted or down-weighted
+* when the evidence is unlikely, which makes Gibbs sampling the method of choice for rare
+* evidence. Nodes that are not ancestors of a query or evidence variable are summed out
+* exactly and never sampled.
+*
+* Every chain starts from a sample drawn with the evidence clamped, discards its first
+* burnIn sweeps and then keeps one sample every thinning sweeps. Several chains run in
+* parallel on separate random number streams and their agreement is reported as R-hat.
+*
+* Clamping the evidence does not make the start state possible: its joint probability is 0
+* when the sampled parents cannot produce the evidence. A chain keeps such samples with
+* weight 0 until it reaches a state of positive probability, after which every sweep stays
+* in one. If no chain ever gets there the evidence is impossible, and the answer is NaN as
+* it is for rejection sampling and likelihood weighting.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class GibbsSampler {
+	/** The default number of sweeps discarded at the start of each chain */
+	public static final int DEFAULT_BURN_IN = 1000;
+	/** The default number of chains */
+	public static final int DEFAULT_CHAINS = 4;
+
+	private BayesianNetwork network;
+	private int burnIn;
+	private int thinning;
+	private int numChains;
+	private ExecutorService executor;
+
+	/**
+	* Creates a Gibbs sampler with the default burn-in and number of chains, without thinning,
+	* running on the common fork-join pool
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	*/
+	public GibbsSampler(BayesianNetwork network) {
+		this(network, DEFAULT_BURN_IN, 1, DEFAULT_CHAINS, ForkJoinPool.commonPool());
+	}
+
+	/**
+	* Creates a Gibbs sampler
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	* @param burnIn
+	* 			The number of sweeps discarded at the start of each chain
+	* @param thinning
+	* 			The number of sweeps between two kept samples (1 keeps every sweep)
+	* @param numChains
+	* 			The number of independent chains
+	* @param executor
+	* 			The executor that runs the chains, or null to run them in turn on the calling thread
+	*
+	* @throws IllegalArgumentException if burnIn is negative or thinning or numChains is not positive
+	*/
+	public GibbsSampler(BayesianNetwork network, int burnIn, int thinning, int numChains, ExecutorService executor) {
+		if(burnIn < 0 || thinning < 1 || numChains < 1) {
+			throw new IllegalArgumentException("Burn-in must not be negative and thinning and the number of chains must be positive");
+		}
+		this.network = network;
+		this.burnIn = burnIn;
+		this.thinning = thinning;
+		this.numChains = numChains;
+		this.executor = executor;
+	}
+
+
+	/**
+	* Approximates the query using Gibbs sampling
+	*
+	* @param q
+	* 			The query
+	* @param numSamples
+	* 			The number of samples kept across all chains
+	* @return
+	* 			The distribution over the query variables and its convergence diagnostic
+	*/
+	public GibbsResult sample(Query q, int numSamples) {
+		return sample(network.compile(q), numSamples);
+	}
+
+	/**
+	* Approximates a compiled query using Gibbs sampling
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples kept across all chains
+	* @return
+	* 			The distribution over the query variables and its convergence diagnostic
+	*/
+	public GibbsResult sample(QueryPlan plan, int numSamples) {
+		return sample(plan, numSamples, network.newRandomStream());
+	}
+
+	/**
+	* Approximates a compiled query using Gibbs sampling with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples kept across all chains
+	* @param root
+	* 			The random number stream that the stream of every chain is split off
+	* @return
+	* 			The distribution over the query variables and its convergence diagnostic
+	*/
+	public GibbsResult sample(QueryPlan plan, int numSamples, RandomSource root) {
+		Chain chain = new Chain(network.getCompiledNetwork(), plan);
+		List<Future<WeightedSet>> futures = new ArrayList<Future<WeightedSet>>();
+
+		for(int c = 0; c < numChains; c++){
+			//the first (numSamples % numChains) chains keep one extra sample
+			int share = numSamples / numChains + (c < numSamples % numChains ? 1 : 0);
+			RandomSource random = root.split();
+			Callable<WeightedSet> callable = () -> chain.run(share, burnIn, thinning, random);
+			if(executor == null){
+				FutureTask<WeightedSet> task = new FutureTask<WeightedSet>(callable);
+				task.run();
+				futures.add(task);
+			}
+			else{
+				futures.add(executor.submit(callable));
+			}
+		}
+
+		WeightedSet[] tallies = new WeightedSet[numChains];
+		WeightedSet ws = plan.newTally();
+		try {
+			for(int c = 0; c < numChains; c++){
+				tallies[c] = futures.get(c).get();
+				ws.merge(tallies[c]);
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sampling", e);
+		}
+		catch(ExecutionException e) {
+			throw new IllegalStateException("Sampling chain failed", e.getCause());
+		}
+
+		double rHat = ws.getTotalWeight() > 0 ? rHat(ws, tallies) : Double.NaN;
+		if(numSamples > 0){
+			ws.normalizeWeights();
+		}
+		return new GibbsResult(ws, numSamples, numChains, rHat);
+	}
+
+	//The largest Gelman-Rubin statistic over the outcomes that were sampled at least once,
+	//treating each outcome as the mean of an indicator variable
+	private static double rHat(WeightedSet pooled, WeightedSet[] tallies) {
+		int m = tallies.length;
+		if(m < 2){
+			return Double.NaN;
+		}
+		double max = 1.0;
+		for(long rank : pooled.getEventRanks()){
+			double meanOfMeans = 0;
+			double within = 0;
+			double n = 0;
+			double[] means = new double[m];
+			for(int c = 0; c < m; c++){
+				double chainSamples = tallies[c].getTotalWeight();
+				means[c] = chainSamples > 0 ? tallies[c].getWeight(rank) / chainSamples : 0;
+				meanOfMeans += means[c] / m;
+				within += (chainSamples > 1 ? chainSamples / (chainSamples - 1) : 1) * means[c] * (1 - means[c]) / m;
+				n += chainSamples / m;
+			}
+			if(n < 2 || pooled.getWeight(rank) == 0){
+				continue;
+			}
+			double between = 0;
+			for(int c = 0; c < m; c++){
+				between += n * (means[c] - meanOfMeans) * (means[c] - meanOfMeans) / (m - 1);
+			}
+			if(within == 0){
+				//every chain is stuck on a single value; they only agree if they all agree
+				max = Math.max(max, between == 0 ? 1.0 : Double.POSITIVE_INFINITY);
+				continue;
+			}
+			double pooledVariance = (n - 1) / n * within + between / n;
+			max = Math.max(max, Math.sqrt(pooledVariance / within));
+		}
+		return max;
+	}
+
+
+	//The structure shared by the chains of one query: which nodes are resampled and
+	//which children make up their Markov blankets
+	private static class Chain {
+		private final CompiledNetwork network;
+		private final QueryPlan plan;
+		private final int[] free; //the relevant nodes that are not evidence, in topological order
+		private final int[][] children; //for every node, its relevant children
+		private final int maxCardinality; //the largest number of states of a free node
+
+		private Chain(CompiledNetwork network, QueryPlan plan) {
+			this.network = network;
+			this.plan = plan;
+
+			int n = network.size();
+			int[] order = plan.getSampleOrder();
+			boolean[] relevant = new boolean[n];
+			for(int i : order){
+				relevant[i] = true;
+			}
+
+			int[] numChildren = new int[n];
+			int numFree = 0;
+			for(int i = 0; i < n; i++){
+				if(!relevant[i]){
+					continue;
+				}
+				for(int p : network.getParents(i)){
+					numChildren[p]++;
+				}
+				if(plan.getEvidence()[i] < 0){
+					numFree++;
+				}
+			}
+
+			free = new int[numFree];
+			children = new int[n][];
+			int maxCardinality = 0;
+			for(int i = 0, f = 0; i < n; i++){
+				children[i] = new int[numChildren[i]];
+				numChildren[i] = 0;
+				if(relevant[i] && plan.getEvidence()[i] < 0){
+					free[f++] = i;
+					maxCardinality = Math.max(maxCardinality, network.getCardinality(i));
+				}
+			}
+			this.maxCardinality = maxCardinality;
+			for(int i = 0; i < n; i++){
+				if(relevant[i]){
+					for(int p : network.getParents(i)){
+						children[p][numChildren[p]++] = i;
+					}
+				}
+			}
+		}
+
+		//Runs one chain and returns the tally of its kept samples
+		private WeightedSet run(int numSamples, int burnIn, int thinning, RandomSource random) {
+			WeightedSet tally = plan.newTally();
+			int[] assignment = initialState(random);
+			double[] weights = new double[maxCardinality];
+			long[] queryStrides = plan.getQueryStrides();
+			int[] queryIds = plan.getQueryIds();
+			boolean possible = isPossible(assignment);
+
+			for(int sweep = 0; sweep < burnIn; sweep++){
+				sweep(assignment, weights, random);
+				possible = possible || isPossible(assignment);
+			}
+			for(int j = 0; j < numSamples; j++){
+				for(int t = 0; t < thinning; t++){
+					sweep(assignment, weights, random);
+					possible = possible || isPossible(assignment);
+				}
+				long rank = 0;
+				for(int i : queryIds){
+					rank += assignment[i] * queryStrides[i];
+				}
+				tally.increment(rank, possible ? 1 : 0);
+			}
+			return tally;
+		}
+
+		//A sample from the network with the evidence clamped, which may still have probability 0
+		private int[] initialState(RandomSource random) {
+			int[] evidence = plan.getEvidence();
+			int[] assignment = new int[network.size()];
+			for(int i : plan.getSampleOrder()){
+				if(evidence[i] >= 0){
+					assignment[i] = evidence[i];
+				}
+				else{
+					network.sample(i, assignment, random);
+				}
+			}
+			return assignment;
+		}
+
+		//Resamples every free node once from its distribution given its Markov blanket
+		private void sweep(int[] assignment, double[] weights, RandomSource random) {
+			for(int k = 0; k < free.length; k++){
+				int i = free[k];
+				int numStates = network.getCardinality(i);
+				double total = 0;
+				int last = 0; //the last state with positive weight
+				for(int s = 0; s < numStates; s++){
+					assignment[i] = s;
+					weights[s] = network.getProbability(i, assignment, s) * childLikelihood(i, assignment);
+					total += weights[s];
+					if(weights[s] > 0){
+						last = s;
+					}
+				}
+
+				if(total > 0){
+					//the last possible state takes whatever rounding leaves, so a chain in a
+					//possible state never leaves it for an impossible one
+					double u = random.nextDouble() * total;
+					int state = 0;
+					while(state < last && u >= weights[state]){
+						u -= weights[state];
+						state++;
+					}
+					assignment[i] = state;
+				}
+				else{
+					assignment[i] = (int)(random.nextDouble() * numStates); //the blanket is impossible either way
+				}
+			}
+		}
+
+		//Whether the joint probability of the relevant nodes in their current states is positive
+		private boolean isPossible(int[] assignment) {
+			for(int i : plan.getSampleOrder()){
+				if(network.getProbability(i, assignment, assignment[i]) == 0){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		//The probability of the children of a node taking their current states
+		private double childLikelihood(int i, int[] assignment) {
+			double likelihood = 1;
+			for(int c : children[i]){
+				likelihood *= network.getProbability(c, assignment, assignment[c]);
+			}
+			return likelihood;
+		}
+	}
+}
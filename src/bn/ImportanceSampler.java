@@ -0,0 +1,314 @@
+package bn;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* Adaptive importance sampling in the style of AIS-BN (Cheng and Druzdzel, 2000).
+*
+* Likelihood weighting samples every unobserved node from its CPT, so the evidence only
+* shows up in the weights. When the evidence is unlikely almost every sample gets a tiny
+* weight and the effective sample size collapses. This sampler instead learns an importance
+* CPT for every relevant node that approximates p(X | parents(X), evidence), samples from
+* it and weights every sample by
+*
+* 		product over sampled X of p(x | parents) / q(x | parents) * product over evidence E of p(e | parents)
+*
+* Only the unobserved ancestors of the evidence get an importance CPT: for any other node
+* relevant to the query, p(X | parents(X), evidence) is its CPT, so it is sampled from the
+* CPT with weight 1. The importance CPTs start as the CPTs, except that the parents of
+* evidence nodes start uniform. They are then refined over a number of learning stages: after every stage each
+* row moves towards the weighted frequency with which the node was true in that row, with a
+* learning rate that decays from 0.4 to 0.14. Every importance probability is kept within
+* [THRESHOLD, 1 - THRESHOLD] so that no sample can get an unbounded weight.
+*
+* Only the samples drawn after learning make up the answer; the Estimate reports their
+* effective sample size, and has converged if the largest standard error it implies is
+* within the sampler's target (see AdaptiveSampler). The importance CPTs are over boolean
+* variables and hold one entry per row, so every ancestor of the evidence must be boolean
+* and have at most MAX_ADAPTED_ROWS parent configurations.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class ImportanceSampler {
+	/** The default number of learning stages */
+	public static final int DEFAULT_STAGES = 10;
+	/** The default number of samples drawn in every learning stage */
+	public static final int DEFAULT_STAGE_SIZE = 2500;
+	/** The smallest probability an importance CPT may give either value of a node */
+	public static final double THRESHOLD = 0.04;
+	/** The largest number of parent configurations of a node whose importance CPT is learned */
+	public static final int MAX_ADAPTED_ROWS = 1 << 16;
+	/** The default target standard error for every query outcome */
+	public static final double DEFAULT_MAX_STANDARD_ERROR = 0.005;
+
+	private static final double INITIAL_RATE = 0.4;
+	private static final double FINAL_RATE = 0.14;
+
+	private BayesianNetwork network;
+	private int numStages;
+	private int stageSize;
+	private double maxStandardError;
+
+	/**
+	* Creates an importance sampler with the default learning schedule
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	*/
+	public ImportanceSampler(BayesianNetwork network) {
+		this(network, DEFAULT_STAGES, DEFAULT_STAGE_SIZE);
+	}
+
+	/**
+	* Creates an importance sampler
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	* @param numStages
+	* 			The number of times the importance CPTs are updated
+	* @param stageSize
+	* 			The number of samples drawn before every update
+	*
+	* @throws IllegalArgumentException if numStages is negative or stageSize is not positive
+	*/
+	public ImportanceSampler(BayesianNetwork network, int numStages, int stageSize) {
+		this(network, numStages, stageSize, DEFAULT_MAX_STANDARD_ERROR);
+	}
+
+	/**
+	* Creates an importance sampler with a target precision
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	* @param numStages
+	* 			The number of times the importance CPTs are updated
+	* @param stageSize
+	* 			The number of samples drawn before every update
+	* @param maxStandardError
+	* 			The standard error for every query outcome below which an estimate has converged
+	*
+	* @throws IllegalArgumentException if numStages is negative or stageSize or the target is
+	* 			not positive
+	*/
+	public ImportanceSampler(BayesianNetwork network, int numStages, int stageSize, double maxStandardError) {
+		if(numStages < 0 || stageSize < 1) {
+			throw new IllegalArgumentException("The number of stages must not be negative and the stage size must be positive");
+		}
+		if(!(maxStandardError > 0)) {
+			throw new IllegalArgumentException("Target standard error must be positive");
+		}
+		this.network = network;
+		this.numStages = numStages;
+		this.stageSize = stageSize;
+		this.maxStandardError = maxStandardError;
+	}
+
+
+	/**
+	* Approximates the query using adaptive importance sampling
+	*
+	* @param q
+	* 			The query
+	* @param numSamples
+	* 			The number of samples drawn after learning
+	* @return
+	* 			The distribution over the query variables with its effective sample size
+	*/
+	public Estimate estimate(Query q, int numSamples) {
+		return estimate(network.compile(q), numSamples);
+	}
+
+	/**
+	* Approximates a compiled query using adaptive importance sampling
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples drawn after learning
+	* @return
+	* 			The distribution over the query variables with its effective sample size
+	*/
+	public Estimate estimate(QueryPlan plan, int numSamples) {
+		return estimate(plan, numSamples, network.newRandomStream());
+	}
+
+	/**
+	* Approximates a compiled query using adaptive importance sampling with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The number of samples drawn after learning
+	* @param random
+	* 			The random number stream, used by this call only
+	* @return
+	* 			The distribution over the query variables with its effective sample size
+	*
+	* @throws IllegalArgumentException if an ancestor of the evidence is not boolean or has more
+	* 			than MAX_ADAPTED_ROWS parent configurations
+	*/
+	public Estimate estimate(QueryPlan plan, int numSamples, RandomSource random) {
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		Proposal proposal = new Proposal(compiled, plan);
+
+		for(int stage = 0; stage < numStages; stage++){
+			proposal.sample(stageSize, random, null);
+			double rate = INITIAL_RATE * Math.pow(FINAL_RATE / INITIAL_RATE, (double)stage / numStages);
+			proposal.update(rate);
+		}
+
+		WeightedSet tally = plan.newTally();
+		double sumOfSquares = proposal.sample(numSamples, random, tally);
+		boolean converged = AdaptiveSampler.maxStandardError(tally, sumOfSquares) <= maxStandardError;
+		return new Estimate(tally, sumOfSquares, numSamples, converged);
+	}
+
+
+	//The importance CPTs of the unobserved ancestors of the evidence of one query, with the
+	//statistics gathered for their next update
+	private static class Proposal {
+		private final CompiledNetwork network;
+		private final QueryPlan plan;
+		private final int[][] strides; //the row stride of every parent of an adapted node
+		private final double[][] icpt; //q(X = true | parents(X)) by row, null unless the node is adapted
+		private final double[][] trueWeight; //the weight of the samples with X true, by row
+		private final double[][] rowWeight; //the weight of all samples, by row
+
+		private Proposal(CompiledNetwork network, QueryPlan plan) {
+			this.network = network;
+			this.plan = plan;
+			int n = network.size();
+			int[] evidence = plan.getEvidence();
+
+			//the ancestors of the evidence (nodes are in topological order)
+			boolean[] upstream = new boolean[n];
+			for(int i = n - 1; i >= 0; i--){
+				if(evidence[i] >= 0 || upstream[i]){
+					for(int p : network.getParents(i)){
+						upstream[p] = true;
+					}
+				}
+			}
+			boolean[] evidenceParent = new boolean[n];
+			for(int e : plan.getEvidenceIds()){
+				for(int p : network.getParents(e)){
+					evidenceParent[p] = true;
+				}
+			}
+
+			strides = new int[n][];
+			icpt = new double[n][];
+			trueWeight = new double[n][];
+			rowWeight = new double[n][];
+			for(int i : plan.getSampleOrder()){
+				if(evidence[i] >= 0 || !upstream[i]){
+					continue;
+				}
+				if(network.getCardinality(i) != 2){
+					throw new IllegalArgumentException("Adaptive importance sampling needs boolean variables, but \""
+						+ network.getName(i) + "\" has " + network.getCardinality(i) + " states");
+				}
+				int[] parentCardinalities = network.getParentCardinalities(i);
+				if(CPT.numRows(parentCardinalities) > MAX_ADAPTED_ROWS){
+					throw new IllegalArgumentException("Adaptive importance sampling can learn at most " + MAX_ADAPTED_ROWS
+						+ " rows, but \"" + network.getName(i) + "\" has " + parentCardinalities.length + " parents");
+				}
+				strides[i] = CPT.strides(parentCardinalities);
+				icpt[i] = network.getCPT(i);
+				for(int row = 0; row < icpt[i].length; row++){
+					icpt[i][row] = evidenceParent[i] ? 0.5 : clamp(icpt[i][row]);
+				}
+				trueWeight[i] = new double[icpt[i].length];
+				rowWeight[i] = new double[icpt[i].length];
+			}
+		}
+
+		//Draws samples from the importance CPTs. Adds them to the tally if there is one,
+		//and otherwise gathers the statistics for the next update.
+		//Returns the sum of the squared weights.
+		private double sample(int numSamples, RandomSource random, WeightedSet tally) {
+			int[] order = plan.getSampleOrder();
+			int[] evidence = plan.getEvidence();
+			long[] queryStrides = plan.getQueryStrides();
+			int[] assignment = new int[network.size()];
+			int[] rows = new int[network.size()];
+			double sumOfSquares = 0;
+
+			for(int j = 0; j < numSamples; j++){
+				double weight = 1;
+				long rank = 0;
+				for(int k = 0; k < order.length; k++){
+					int i = order[k];
+					if(evidence[i] >= 0){
+						weight *= network.getProbability(i, assignment, evidence[i]);
+						assignment[i] = evidence[i];
+					}
+					else if(icpt[i] == null){
+						rank += network.sample(i, assignment, random) * queryStrides[i];
+					}
+					else{
+						int row = row(i, assignment);
+						double p = network.getProbability(i, assignment, 0);
+						double q = icpt[i][row];
+						boolean value = random.nextDouble() < q;
+						assignment[i] = value ? 0 : 1;
+						weight *= value ? p / q : (1 - p) / (1 - q);
+						rank += assignment[i] * queryStrides[i];
+						rows[i] = row;
+					}
+				}
+
+				if(tally != null){
+					tally.increment(rank, weight);
+				}
+				else{
+					for(int i : order){
+						if(icpt[i] != null){
+							rowWeight[i][rows[i]] += weight;
+							trueWeight[i][rows[i]] += assignment[i] == 0 ? weight : 0;
+						}
+					}
+				}
+				sumOfSquares += weight * weight;
+			}
+			return sumOfSquares;
+		}
+
+		//Moves every importance CPT row that was visited towards the weighted frequency
+		//of the node being true and clears the statistics
+		private void update(double rate) {
+			for(int i : plan.getSampleOrder()){
+				if(icpt[i] == null){
+					continue;
+				}
+				for(int row = 0; row < icpt[i].length; row++){
+					if(rowWeight[i][row] > 0){
+						double target = trueWeight[i][row] / rowWeight[i][row];
+						icpt[i][row] = clamp(icpt[i][row] + rate * (target - icpt[i][row]));
+					}
+					rowWeight[i][row] = 0;
+					trueWeight[i][row] = 0;
+				}
+			}
+		}
+
+		//The row of the configuration of the parents of adapted node i, below MAX_ADAPTED_ROWS
+		private int row(int i, int[] assignment) {
+			int[] pa = network.getParents(i);
+			int[] stride = strides[i];
+			int row = 0;
+			for(int p = 0; p < pa.length; p++){
+				row += assignment[pa[p]] * stride[p];
+			}
+			return row;
+		}
+
+		private static double clamp(double q) {
+			return Math.min(Math.max(q, THRESHOLD), 1 - THRESHOLD);
+		}
+	}
+}
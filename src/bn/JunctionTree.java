@@ -0,0 +1,309 @@
+package bn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import util.WeightedSet;
+
+/**
+* A Bayesian network compiled into a calibrated junction tree.
+*
+* Compilation moralizes the network, triangulates the moral graph in min-fill order,
+* connects the resulting cliques into a maximum-weight spanning tree and assigns every
+* CPT to a clique that contains its family. The tree is then calibrated once with
+* Shafer-Shenoy message passing and all messages are kept.
+*
+* A query without evidence is read directly off the calibrated belief of a clique that
+* contains all the query variables. A query with evidence collects messages towards such
+* a clique, recomputing only the messages that come from a part of the tree holding
+* evidence; every other message is reused from the calibration. Queries whose variables
+* do not share a clique fall back to variable elimination.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class JunctionTree {
+
+	private BayesianNetwork network;
+	private int[][] cliques; //the node ids of every clique, in ascending order
+	private int[][] neighbours; //the cliques adjacent to every clique
+	private Factor[] potentials; //the product of the CPTs assigned to every clique
+	private Factor[][] messages; //messages[u][k] is the calibrated message from neighbours[u][k] to u
+	private Factor[] beliefs; //the calibrated joint marginal of every clique
+	private int[] home; //for every node, a clique that contains the node and its parents
+
+
+	/**
+	* Compiles and calibrates a junction tree for the given network
+	*
+	* @param network
+	* 			The Bayesian network
+	*/
+	public JunctionTree(BayesianNetwork network) {
+		this.network = network;
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		int n = compiled.size();
+
+		triangulate(compiled, n);
+		connect();
+
+		//assign every CPT to the first clique that contains its family
+		home = new int[n];
+		potentials = new Factor[cliques.length];
+		for(int c = 0; c < cliques.length; c++){
+			int[] cards = new int[cliques[c].length];
+			for(int j = 0; j < cards.length; j++){
+				cards[j] = compiled.getCardinality(cliques[c][j]);
+			}
+			potentials[c] = Factor.unit(cliques[c], cards);
+		}
+		for(int i = 0; i < n; i++){
+			Factor cpt = Factor.fromCPT(compiled, i);
+			home[i] = findClique(cpt.getVariables());
+			potentials[home[i]] = potentials[home[i]].multiply(cpt);
+		}
+
+		calibrate();
+	}
+
+
+	/**
+	* Returns the cliques of the junction tree
+	* @return The node ids of every clique
+	*/
+	public int[][] getCliques() {
+		return cliques;
+	}
+
+	/**
+	* Computes the exact answer to a query
+	*
+	* @param plan
+	* 			The query resolved against the network
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet query(QueryPlan plan) {
+		int[] evidence = plan.getEvidence();
+
+		int[] queryVars = plan.getQueryIds();
+		boolean hasEvidence = plan.hasEvidence();
+
+		int root = findClique(queryVars);
+		if(root < 0){
+			return network.variableElimination(plan);
+		}
+
+		Factor joint;
+		if(!hasEvidence){
+			joint = beliefs[root];
+		}
+		else{
+			joint = observe(potentials[root], root, evidence);
+			for(int k = 0; k < neighbours[root].length; k++){
+				Factor m = collect(neighbours[root][k], root, evidence);
+				joint = joint.multiply(m != null ? m : messages[root][k]);
+			}
+		}
+		return VariableElimination.toDistribution(joint.marginalize(queryVars), plan, 0);
+	}
+
+
+	//Returns the message from clique u to its neighbour v given the evidence,
+	//or null if there is no evidence on u's side of the tree and the calibrated message still holds
+	private Factor collect(int u, int v, int[] evidence) {
+		Factor[] incoming = new Factor[neighbours[u].length];
+		boolean affected = false;
+		for(int k = 0; k < neighbours[u].length; k++){
+			int w = neighbours[u][k];
+			if(w != v){
+				incoming[k] = collect(w, u, evidence);
+				affected |= incoming[k] != null;
+			}
+		}
+		for(int i = 0; i < evidence.length && !affected; i++){
+			affected = evidence[i] >= 0 && home[i] == u;
+		}
+		if(!affected){
+			return null;
+		}
+
+		Factor product = observe(potentials[u], u, evidence);
+		for(int k = 0; k < neighbours[u].length; k++){
+			if(neighbours[u][k] != v){
+				product = product.multiply(incoming[k] != null ? incoming[k] : messages[u][k]);
+			}
+		}
+		return product.marginalize(cliques[v]);
+	}
+
+	//Applies the evidence whose home is clique c to a factor over that clique
+	private Factor observe(Factor f, int c, int[] evidence) {
+		for(int i = 0; i < evidence.length; i++){
+			if(evidence[i] >= 0 && home[i] == c){
+				f = f.observe(i, evidence[i]);
+			}
+		}
+		return f;
+	}
+
+	//Computes every message in both directions and the belief of every clique
+	private void calibrate() {
+		messages = new Factor[cliques.length][];
+		for(int c = 0; c < cliques.length; c++){
+			messages[c] = new Factor[neighbours[c].length];
+		}
+
+		//a message can be sent once all other messages into its sender are known
+		boolean progress = true;
+		while(progress){
+			progress = false;
+			for(int u = 0; u < cliques.length; u++){
+				for(int k = 0; k < neighbours[u].length; k++){
+					int v = neighbours[u][k];
+					int back = indexOf(neighbours[v], u);
+					if(messages[v][back] != null){
+						continue;
+					}
+					Factor product = potentials[u];
+					for(int j = 0; j < neighbours[u].length && product != null; j++){
+						if(j != k){
+							product = messages[u][j] == null ? null : product.multiply(messages[u][j]);
+						}
+					}
+					if(product != null){
+						messages[v][back] = product.marginalize(cliques[v]);
+						progress = true;
+					}
+				}
+			}
+		}
+
+		beliefs = new Factor[cliques.length];
+		for(int c = 0; c < cliques.length; c++){
+			Factor belief = potentials[c];
+			for(Factor m : messages[c]){
+				belief = belief.multiply(m);
+			}
+			beliefs[c] = belief;
+		}
+	}
+
+	//Moralizes and triangulates the network in min-fill order, keeping the maximal cliques
+	private void triangulate(CompiledNetwork compiled, int n) {
+		EliminationGraph graph = new EliminationGraph(n);
+		for(int i = 0; i < n; i++){
+			int[] family = Arrays.copyOf(compiled.getParents(i), compiled.getParents(i).length + 1);
+			family[family.length - 1] = i;
+			graph.connect(family); //links every node to its parents and marries the parents
+		}
+
+		List<int[]> found = new ArrayList<int[]>();
+		boolean[] candidates = new boolean[n];
+		Arrays.fill(candidates, true);
+		int best;
+		while((best = graph.next(candidates)) >= 0){
+			//the eliminated variable and its remaining neighbours form a clique
+			int[] neighbours = graph.eliminate(best);
+			int[] clique = Arrays.copyOf(neighbours, neighbours.length + 1);
+			clique[neighbours.length] = best;
+			Arrays.sort(clique);
+
+			boolean maximal = true;
+			for(int[] other : found){
+				maximal &= !containsAll(other, clique);
+			}
+			if(maximal){
+				found.add(clique);
+			}
+		}
+		cliques = found.toArray(new int[found.size()][]);
+	}
+
+	//Joins the cliques into a maximum spanning tree weighted by separator size (Prim's algorithm)
+	private void connect() {
+		int m = cliques.length;
+		List<List<Integer>> adjacency = new ArrayList<List<Integer>>();
+		for(int c = 0; c < m; c++){
+			adjacency.add(new ArrayList<Integer>());
+		}
+
+		boolean[] inTree = new boolean[m];
+		int[] bestWeight = new int[m];
+		int[] bestLink = new int[m];
+		Arrays.fill(bestWeight, -1);
+		Arrays.fill(bestLink, -1);
+		bestWeight[0] = 0;
+
+		for(int step = 0; step < m; step++){
+			int next = -1;
+			for(int c = 0; c < m; c++){
+				if(!inTree[c] && (next < 0 || bestWeight[c] > bestWeight[next])){
+					next = c;
+				}
+			}
+			inTree[next] = true;
+			if(bestLink[next] >= 0){
+				adjacency.get(next).add(bestLink[next]);
+				adjacency.get(bestLink[next]).add(next);
+			}
+			for(int c = 0; c < m; c++){
+				int weight = separatorSize(cliques[next], cliques[c]);
+				if(!inTree[c] && weight > bestWeight[c]){
+					bestWeight[c] = weight;
+					bestLink[c] = next;
+				}
+			}
+		}
+
+		neighbours = new int[m][];
+		for(int c = 0; c < m; c++){
+			List<Integer> list = adjacency.get(c);
+			neighbours[c] = new int[list.size()];
+			for(int k = 0; k < list.size(); k++){
+				neighbours[c][k] = list.get(k);
+			}
+		}
+	}
+
+	//Returns the smallest clique containing all the given variables, or -1 if there is none
+	private int findClique(int[] vars) {
+		int best = -1;
+		for(int c = 0; c < cliques.length; c++){
+			if(containsAll(cliques[c], vars) && (best < 0 || cliques[c].length < cliques[best].length)){
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	private static boolean containsAll(int[] sorted, int[] vars) {
+		for(int v : vars){
+			if(Arrays.binarySearch(sorted, v) < 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int separatorSize(int[] a, int[] b) {
+		int size = 0;
+		for(int v : a){
+			if(Arrays.binarySearch(b, v) >= 0){
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for(int k = 0; k < array.length; k++){
+			if(array[k] == value){
+				return k;
+			}
+		}
+		return -1;
+	}
+}
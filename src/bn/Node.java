@@ -1,26 +1,93 @@
 package bn;
 
-import java.lang.Math;
-import util.WeightedSet;
 import util.BitVector;
+import util.RandomSource;
+import util.WeightedSet;
 
 /**
-* Represents a boolean random variable in a Bayesian Network
+* Represents a discrete random variable in a Bayesian Network.
+*
+* A node only describes the structure of the network: its name, its states, its parents and
+* its CPT. The states are numbered from 0 in the order they are listed; a boolean variable
+* has the states "true" and "false", in that order. A node is immutable and may be shared by
+* any number of threads. The states of the variables during inference are kept by the
+* caller, e.g. in an int[] indexed by node id (see CompiledNetwork), so every query has its
+* own assignment.
 *
 * @author Sarah Walling-Bell
 * @version March 29, 2019
 *
 */
 public class Node {
-	private String name;
-	private boolean value;
-	private Node[] parents;
-	private WeightedSet cpt;
+	//The states of a boolean random variable
+	static final String[] BOOLEAN_STATES = { "true", "false" };
+
+	private final String name;
+	private final String[] states;
+	private final Node[] parents;
+	private final CPT cpt;
+
 
+	/**
+	* Creates a node in a Bayesian network representing a discrete random variable.
+	*
+	* @param name
+	* 			The name of the random variable
+	* @param states
+	* 			The names of the states of the random variable, in state order
+	* @param parents
+	* 			The parents of the node in the Bayesian network
+	* @param cpt
+	* 			The conditional probability table, in any of its representations
+	*
+	* @throws IllegalArgumentException if a state is repeated or the CPT is not over the given
+	* 			states and parents
+	*/
+	public Node(String name, String[] states, Node[] parents, CPT cpt) {
+		if(cpt.getNumParents() != parents.length) {
+			throw new IllegalArgumentException("The CPT of \"" + name + "\" has " + cpt.getNumParents() + " parents, not " + parents.length);
+		}
+		if(cpt.getNumStates() != states.length) {
+			throw new IllegalArgumentException("The CPT of \"" + name + "\" has " + cpt.getNumStates() + " states, not " + states.length);
+		}
+		int[] parentCardinalities = cpt.getParentCardinalities();
+		for(int p = 0; p < parents.length; p++) {
+			if(parentCardinalities[p] != parents[p].getNumStates()) {
+				throw new IllegalArgumentException("The CPT of \"" + name + "\" gives parent \"" + parents[p].getName() + "\" "
+					+ parentCardinalities[p] + " states, not " + parents[p].getNumStates());
+			}
+		}
+		for(int s = 0; s < states.length; s++) {
+			for(int t = 0; t < s; t++) {
+				if(states[s].equals(states[t])) {
+					throw new IllegalArgumentException("Node \"" + name + "\" has state \"" + states[s] + "\" twice");
+				}
+			}
+		}
+		this.name = name;
+		this.states = states.clone();
+		this.parents = parents;
+		this.cpt = cpt;
+	}
+
+	/**
+	* Creates a node in a Bayesian network representing a boolean random variable.
+	*
+	* @param name
+	* 			The name of the random variable
+	* @param parents
+	* 			The parents of the node in the Bayesian network
+	* @param cpt
+	* 			The conditional probability table, in any of its representations
+	*
+	* @throws IllegalArgumentException if the CPT is not over a boolean variable and the given parents
+	*/
+	public Node(String name, Node[] parents, CPT cpt) {
+		this(name, BOOLEAN_STATES, parents, cpt);
+	}
 
 	/**
 	* Creates a node in a Bayesian network representing a boolean random variable.
-	* The value of the node is initially set to false.
 	*
 	* @param name
 	* 			The name of the random variable
@@ -34,15 +101,11 @@ public class Node {
 	*
 	*/
 	public Node(String name, Node[] parents, WeightedSet cpt) {
-		this.name = name;
-		value = false;
-		this.parents = parents;
-		this.cpt = cpt;
+		this(name, parents, toDense(parents.length, cpt));
 	}
 
 	/**
 	* Creates a node in a Bayesian network representing a boolean random variable with no parents.
-	* The value of the node is initially set to false.
 	*
 	* @param name
 	* 			The name of the random variable
@@ -52,18 +115,21 @@ public class Node {
 	* @pre The cpt contains exactly 1 entry which is the probability of the random variable being true
 	*/
 	public Node(String name, WeightedSet cpt) {
-		this.name = name;
-		value = false;
-		this.parents = new Node[0];
-		this.cpt = cpt;
+		this(name, new Node[0], toDense(0, cpt));
 	}
 
-	/**
-	* Returns the value of the random variable
-	* @return The value of the random variable
-	*/
-	public boolean getValue() {
-		return value;
+	//Copies the rows of a table-shaped CPT; a node without parents stores its prior under BitVector.TRUE
+	private static DenseCPT toDense(int numParents, WeightedSet cpt) {
+		double[] table = new double[1 << numParents];
+		if(numParents == 0){
+			table[0] = cpt.getWeight(BitVector.TRUE);
+		}
+		else{
+			for(int rank = 0; rank < table.length; rank++){
+				table[rank] = cpt.getWeight(rank);
+			}
+		}
+		return new DenseCPT(table);
 	}
 
 	/**
@@ -74,6 +140,14 @@ public class Node {
 		return parents;
 	}
 
+	/**
+	* Returns the conditional probability table of the random variable
+	* @return The conditional probability table
+	*/
+	public CPT getCPT() {
+		return cpt;
+	}
+
 	/**
 	* Returns the name of the random variable
 	* @return The name of the random variable
@@ -83,63 +157,54 @@ public class Node {
 	}
 
 	/**
-	* Returns p(X = true | parents(X))
-	* @return The probability of the random variable being true given the values of its parents
+	* Returns the names of the states of the random variable
+	* @return The states, in state order
 	*/
-	public double getProbability() {
-		// System.out.println("node: "+name);
-		// cpt.printCPT();
-
-		//if node has no parents, return BitVector TRUE
-		if(parents.length < 1){
-			return cpt.getWeight(BitVector.TRUE);
-		}
-		else{
-			//populate a BitVector based on the parents' values
-			BitVector bv = new BitVector(parents.length);
-			for(int i = 0; i < parents.length; i ++){
-				if(parents[i].getValue() == false){
-					bv.set(i, false);
-				}
-			}
-			return cpt.getWeight(bv);
-		}
+	public String[] getStates() {
+		return states.clone();
 	}
 
 	/**
-	* Sets the value of the random variable to the specified value
-	* @param newValue
-	* 				The new value of the random variable
+	* Returns the number of states of the random variable
+	* @return The number of states, 2 for a boolean variable
 	*/
-	public void setValue(boolean newValue) {
-		value = newValue;
+	public int getNumStates() {
+		return states.length;
 	}
 
 	/**
-	* Samples a value for the random variable conditioned on the configuration of the parents (if parents exist).
-	* If there are no parents, this method samples a value for the random variable from the prior distribution.
-	*
-	* Sets the value of the node to the outcome of the sample.
+	* Returns p(X = state | parents(X)) for the given states of the parents
 	*
-	* @pre
-	* 			sampleAndSet() has already been called on the node's parents (if any exist)
+	* @param parentStates
+	* 			The state of every parent, in the order of getParents()
+	* @param state
+	* 			A state of the random variable
+	* @return The probability of the random variable taking the state given the states of its parents
+	*/
+	public double getProbability(int[] parentStates, int state) {
+		return cpt.getProbability(parentStates, state);
+	}
+
+	/**
+	* Samples a state for the random variable conditioned on the given states of its parents.
+	* If there are no parents, this method samples a state from the prior distribution.
 	*
+	* @param parentStates
+	* 			The state of every parent, in the order of getParents()
+	* @param random
+	* 			The random number source
 	* @return
-	* 			The sampled value
+	* 			The sampled state
 	*/
-	public boolean sampleAndSet() {
-
-		//randomly generate a number r between 0 and 1
-		double random = Math.random();
-
-			//if r < getProbability() return true, else return false
-			if(random < getProbability()){
-				value = true;
-				return true;
-			}
-			else{
-				value = false;
-				return false;
+	public int sample(int[] parentStates, RandomSource random) {
+		double u = random.nextDouble();
+		int last = states.length - 1;
+		for(int s = 0; s < last; s++){
+			u -= getProbability(parentStates, s);
+			if(u < 0){
+				return s;
 			}
+		}
+		return last;
 	}
 }
@@ -0,0 +1,176 @@
+package bn;
+
+import java.nio.DoubleBuffer;
+
+/**
+* A leaky noisy-MAX CPT, the noisy-OR model for graded variables (Diez, 1993).
+*
+* The states of the variable and of every parent are degrees, listed from the highest down
+* to the normal state, which is the last one (a boolean variable is normal when false).
+* Every parent that is not in its normal state independently raises X to a degree drawn
+* from its own distribution over the states of X, a leak does the same for causes outside
+* the network, and X takes the highest of these degrees:
+*
+* 		p(X at most s | parents(X)) = product over the leak and every parent P that is not normal
+* 			of c_P(X at most s | P)
+*
+* where "at most s" means s or any state listed after it. With boolean variables this is
+* exactly the noisy-OR model.
+*
+* A node with k states whose parents have m_1, ..., m_n states needs n + k (1 + sum of (m_i - 1))
+* parameters instead of the k * m_1 * ... * m_n of its table, laid out as the number of states
+* of every parent in parent order, then the leak distribution over the states of X, then for
+* every parent in order and every state of it but the last, the distribution over the states
+* of X that the parent alone causes in that state.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class NoisyMaxCPT extends CPT {
+
+	/**
+	* Creates a noisy-MAX CPT
+	*
+	* @param parentCardinalities
+	* 			The number of states of every parent
+	* @param numStates
+	* 			The number of states of the variable, at least 2
+	* @param leak
+	* 			The distribution over the states of X when every parent is normal
+	* @param causes
+	* 			For every parent in order and every state of it but the last, the distribution
+	* 			over the states of X that the parent causes on its own in that state
+	*
+	* @throws IllegalArgumentException if there is not one distribution over numStates states
+	* 			for every abnormal parent state, or one of them is not a distribution
+	*/
+	public NoisyMaxCPT(int[] parentCardinalities, int numStates, double[] leak, double[][] causes) {
+		super(parentCardinalities.clone(), numStates, parameters(parentCardinalities, numStates, leak, causes));
+	}
+
+	//Recreates a noisy-MAX CPT from its layout
+	NoisyMaxCPT(int[] parentCardinalities, int numStates, double[] parameters) {
+		super(parentCardinalities.clone(), numStates, parameters.clone());
+	}
+
+	@Override
+	byte getKind() {
+		return NOISY_MAX;
+	}
+
+	//Evaluates a noisy-MAX CPT stored at the given offset, where parents[p] is the index in
+	//states of the state of parent p
+	static double evaluate(DoubleBuffer parameters, int offset, int numStates, int[] parents, int[] states, int state) {
+		int n = parents.length;
+		int leak = offset + n;
+		double atMost = atMost(parameters, leak, numStates, state);
+		double below = atMost - parameters.get(leak + state);
+		int position = leak + numStates;
+		for(int p = 0; p < n; p++){
+			int m = (int)parameters.get(offset + p);
+			int u = states[parents[p]];
+			if(u < m - 1){
+				int cause = position + u * numStates;
+				double causeAtMost = atMost(parameters, cause, numStates, state);
+				atMost *= causeAtMost;
+				below *= causeAtMost - parameters.get(cause + state);
+			}
+			position += (m - 1) * numStates;
+		}
+		return Math.max(atMost - below, 0);
+	}
+
+	//Evaluates a noisy-MAX CPT stored at the given offset for the row of its n parents
+	static double evaluate(DoubleBuffer parameters, int offset, int numStates, int n, int row, int state) {
+		int leak = offset + n;
+		double atMost = atMost(parameters, leak, numStates, state);
+		double below = atMost - parameters.get(leak + state);
+		int position = leak + numStates;
+		for(int p = 0; p < n; p++){
+			position += ((int)parameters.get(offset + p) - 1) * numStates;
+		}
+		//the last parent changes fastest in the row, so decode the parents from the last
+		for(int p = n - 1; p >= 0; p--){
+			int m = (int)parameters.get(offset + p);
+			int u = row % m;
+			row /= m;
+			position -= (m - 1) * numStates;
+			if(u < m - 1){
+				int cause = position + u * numStates;
+				double causeAtMost = atMost(parameters, cause, numStates, state);
+				atMost *= causeAtMost;
+				below *= causeAtMost - parameters.get(cause + state);
+			}
+		}
+		return Math.max(atMost - below, 0);
+	}
+
+	//The probability of a distribution stored at the given position giving state or a lower one
+	private static double atMost(DoubleBuffer parameters, int position, int numStates, int state) {
+		double sum = 0;
+		for(int t = state; t < numStates; t++){
+			sum += parameters.get(position + t);
+		}
+		return sum;
+	}
+
+	//The number of parameters of a noisy-MAX CPT stored at the given offset, checking that
+	//it gives the right number of states for every parent and that every distribution is one
+	static int size(DoubleBuffer parameters, int offset, int numStates, int[] parentCardinalities) {
+		int n = parentCardinalities.length;
+		if(offset + (long)n > parameters.capacity()){
+			throw new IllegalArgumentException("The noisy-max CPT is truncated");
+		}
+		long size = n + numStates;
+		for(int p = 0; p < n; p++){
+			if(parameters.get(offset + p) != parentCardinalities[p]){
+				throw new IllegalArgumentException("The noisy-max CPT gives parent " + p + " " + parameters.get(offset + p)
+					+ " states, not " + parentCardinalities[p]);
+			}
+			size += (long)(parentCardinalities[p] - 1) * numStates;
+		}
+		if(offset + size > parameters.capacity()){
+			throw new IllegalArgumentException("The noisy-max CPT is truncated");
+		}
+		for(int start = offset + n; start < offset + size; start += numStates){
+			double sum = 0;
+			for(int s = 0; s < numStates; s++){
+				checkProbability(parameters.get(start + s));
+				sum += parameters.get(start + s);
+			}
+			if(Math.abs(sum - 1) > CategoricalCPT.TOLERANCE){
+				throw new IllegalArgumentException("A distribution of the noisy-max CPT sums to " + sum + ", not 1");
+			}
+		}
+		return (int)size;
+	}
+
+	private static double[] parameters(int[] parentCardinalities, int numStates, double[] leak, double[][] causes) {
+		int n = parentCardinalities.length;
+		int numCauses = 0;
+		for(int m : parentCardinalities){
+			numCauses += m - 1;
+		}
+		if(causes.length != numCauses){
+			throw new IllegalArgumentException("The noisy-max CPT needs " + numCauses + " cause distributions, not " + causes.length);
+		}
+		double[] parameters = new double[n + (1 + numCauses) * numStates];
+		for(int p = 0; p < n; p++){
+			parameters[p] = parentCardinalities[p];
+		}
+		copy(leak, parameters, n, numStates);
+		for(int c = 0; c < numCauses; c++){
+			copy(causes[c], parameters, n + (1 + c) * numStates, numStates);
+		}
+		return parameters;
+	}
+
+	private static void copy(double[] distribution, double[] parameters, int position, int numStates) {
+		if(distribution.length != numStates){
+			throw new IllegalArgumentException("A distribution of the noisy-max CPT needs " + numStates + " probabilities, not "
+				+ distribution.length);
+		}
+		System.arraycopy(distribution, 0, parameters, position, numStates);
+	}
+}
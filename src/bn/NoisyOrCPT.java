@@ -0,0 +1,72 @@
+package bn;
+
+import java.nio.DoubleBuffer;
+
+/**
+* A leaky noisy-OR CPT: every parent that is true independently causes X with its own
+* probability, and X may also be caused by something outside the network with the leak
+* probability:
+*
+* 		p(X = true | parents(X)) = 1 - (1 - leak) * product over true parents P of (1 - p(P))
+*
+* A node with k parents needs k + 1 parameters instead of 2^k rows, laid out as the leak
+* followed by the probability of every parent in parent order. For boolean variables this
+* is also the noisy-MAX model.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class NoisyOrCPT extends CPT {
+
+	/**
+	* Creates a noisy-OR CPT
+	*
+	* @param leak
+	* 			The probability that X is true when every parent is false
+	* @param causes
+	* 			For every parent, the probability that it alone causes X when it is true
+	*
+	* @throws IllegalArgumentException if a parameter is not a probability
+	*/
+	public NoisyOrCPT(double leak, double[] causes) {
+		super(booleanParents(causes.length), 2, parameters(leak, causes));
+	}
+
+	@Override
+	byte getKind() {
+		return NOISY_OR;
+	}
+
+	//Evaluates a noisy-OR CPT stored at the given offset
+	static double evaluate(DoubleBuffer parameters, int offset, int[] parents, int[] states) {
+		double allFalse = 1 - parameters.get(offset);
+		for(int p = 0; p < parents.length; p++){
+			if(states[parents[p]] == 0){
+				allFalse *= 1 - parameters.get(offset + 1 + p);
+			}
+		}
+		return 1 - allFalse;
+	}
+
+	//Evaluates a noisy-OR CPT stored at the given offset for the row of its k parents
+	static double evaluate(DoubleBuffer parameters, int offset, int k, int row) {
+		double allFalse = 1 - parameters.get(offset);
+		for(int p = 0; p < k; p++){
+			if(((row >>> (k - 1 - p)) & 1) == 0){
+				allFalse *= 1 - parameters.get(offset + 1 + p);
+			}
+		}
+		return 1 - allFalse;
+	}
+
+	private static double[] parameters(double leak, double[] causes) {
+		double[] parameters = new double[causes.length + 1];
+		parameters[0] = leak;
+		System.arraycopy(causes, 0, parameters, 1, causes.length);
+		for(double p : parameters){
+			checkProbability(p);
+		}
+		return parameters;
+	}
+}
@@ -0,0 +1,194 @@
+package bn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* Runs the samplers of a Bayesian network on several threads at once.
+*
+* The requested number of samples is split evenly across a number of tasks. Every task
+* keeps its own node values, its own random number stream (split from a common root) and
+* its own tally. The tallies are merged once all tasks are done and only then normalized.
+* Given the same root stream and number of tasks, a run gives the same result bit for bit
+* however the tasks are scheduled.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class ParallelSampler {
+
+	private final BayesianNetwork network;
+	private final ExecutorService executor;
+	private final int numTasks;
+
+	/**
+	* Creates a sampler that runs on the common fork-join pool with one task per core
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	*/
+	public ParallelSampler(BayesianNetwork network) {
+		this(network, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	* Creates a sampler that runs on the given executor
+	*
+	* @param network
+	* 			The Bayesian network to sample
+	* @param executor
+	* 			The executor that runs the sampling tasks
+	* @param numTasks
+	* 			The number of tasks the samples are split across
+	*
+	* @throws IllegalArgumentException if numTasks is not positive
+	*/
+	public ParallelSampler(BayesianNetwork network, ExecutorService executor, int numTasks) {
+		if(numTasks < 1) {
+			throw new IllegalArgumentException("Number of tasks must be positive");
+		}
+		this.network = network;
+		this.executor = executor;
+		this.numTasks = numTasks;
+	}
+
+
+	/**
+	* Approximates the query using direct sampling
+	*
+	* @param q
+	* 			The query
+	* @param numSamples
+	* 			The total number of samples across all tasks
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet directSample(Query q, int numSamples) {
+		return directSample(network.compile(q), numSamples, network.newRandomStream());
+	}
+
+	/**
+	* Approximates a compiled query using direct sampling with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The total number of samples across all tasks
+	* @param root
+	* 			The random number stream that the stream of every task is split off
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet directSample(QueryPlan plan, int numSamples, RandomSource root) {
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		return run(plan, numSamples, root, (n, random) -> compiled.directSample(plan, n, random));
+	}
+
+	/**
+	* Approximates the query using rejection sampling
+	*
+	* @param q
+	* 			The query
+	* @param numSamples
+	* 			The total number of samples across all tasks
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet rejectionSampling(Query q, int numSamples) {
+		return rejectionSampling(network.compile(q), numSamples, network.newRandomStream());
+	}
+
+	/**
+	* Approximates a compiled query using rejection sampling with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The total number of samples across all tasks
+	* @param root
+	* 			The random number stream that the stream of every task is split off
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet rejectionSampling(QueryPlan plan, int numSamples, RandomSource root) {
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		return run(plan, numSamples, root, (n, random) -> compiled.rejectionSample(plan, n, random));
+	}
+
+	/**
+	* Approximates the query using likelihood weighting
+	*
+	* @param q
+	* 			The query
+	* @param numSamples
+	* 			The total number of samples across all tasks
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet likelihoodWeighting(Query q, int numSamples) {
+		return likelihoodWeighting(network.compile(q), numSamples, network.newRandomStream());
+	}
+
+	/**
+	* Approximates a compiled query using likelihood weighting with the given random numbers
+	*
+	* @param plan
+	* 			The query plan
+	* @param numSamples
+	* 			The total number of samples across all tasks
+	* @param root
+	* 			The random number stream that the stream of every task is split off
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet likelihoodWeighting(QueryPlan plan, int numSamples, RandomSource root) {
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		return run(plan, numSamples, root, (n, random) -> compiled.likelihoodWeighting(plan, n, random));
+	}
+
+
+	//A sampling run over a share of the samples
+	private interface Task {
+		WeightedSet sample(int numSamples, RandomSource random);
+	}
+
+	//Splits the samples across the tasks, merges their tallies and normalizes the result
+	private WeightedSet run(QueryPlan plan, int numSamples, RandomSource root, Task task) {
+		List<Future<WeightedSet>> futures = new ArrayList<Future<WeightedSet>>();
+
+		for(int t = 0; t < numTasks; t++){
+			//the first (numSamples % numTasks) tasks take one extra sample
+			int share = numSamples / numTasks + (t < numSamples % numTasks ? 1 : 0);
+			RandomSource random = root.split();
+			Callable<WeightedSet> callable = () -> task.sample(share, random);
+			futures.add(executor.submit(callable));
+		}
+
+		WeightedSet ws = plan.newTally();
+		try {
+			for(Future<WeightedSet> f : futures){
+				ws.merge(f.get());
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sampling", e);
+		}
+		catch(ExecutionException e) {
+			throw new IllegalStateException("Sampling task failed", e.getCause());
+		}
+
+		ws.normalizeWeights();
+		return ws;
+	}
+}
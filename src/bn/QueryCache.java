@@ -0,0 +1,199 @@
+package bn;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* A size-bounded cache of sampled query results, evicting the least recently used entry.
+*
+* Results are keyed by the query (its query variables and evidence assignment, independent
+* of the order in which they were written), the sampling method and the network's root
+* random source, so a result drawn before BayesianNetwork.setRandomSource is never returned
+* or refined after it; such entries simply age out. The root is identified by the number of
+* times it was replaced rather than by its seed: a root seeded again with the same seed
+* splits off the same streams as before, and refining a cached result with them would add
+* the same samples twice. A request whose root is replaced while it waits for its entry
+* starts over under the new root. Every entry keeps the unnormalized tally of all samples
+* drawn for it so far:
+*
+* - a request for at most as many samples as the entry holds is a hit and is answered
+* 	from the tally without sampling (using all of the entry's samples)
+* - a request for more samples is a refinement: only the missing samples are drawn and
+* 	added to the tally
+* - a request for a query that is not cached is a miss and is sampled from scratch
+*
+* Requests for different queries may run concurrently; requests for the same query take
+* turns so that no sample is drawn twice.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class QueryCache {
+
+	private BayesianNetwork network;
+	private LinkedHashMap<String, Entry> entries;
+	private long hits;
+	private long refinements;
+	private long misses;
+
+	//The samples drawn so far for one query and method
+	private static class Entry {
+		private final WeightedSet tally;
+		private int numSamples;
+
+		private Entry(QueryPlan plan) {
+			tally = plan.newTally();
+		}
+	}
+
+	/**
+	* Creates an empty cache
+	*
+	* @param network
+	* 			The Bayesian network whose queries are cached
+	* @param capacity
+	* 			The largest number of results kept at once
+	*
+	* @throws IllegalArgumentException if the capacity is not positive
+	*/
+	public QueryCache(BayesianNetwork network, int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Cache capacity must be positive");
+		}
+		this.network = network;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+
+	/**
+	* Approximates the query with the given method, reusing and extending cached samples
+	*
+	* @param q
+	* 			The query
+	* @param method
+	* 			The sampling method
+	* @param numSamples
+	* 			The smallest number of samples the result should be based on
+	* @return
+	* 			A probability distribution over the query variables
+	*
+	* @throws IllegalArgumentException if the query names a variable that is not in the network
+	*/
+	public WeightedSet query(Query q, SamplingMethod method, int numSamples) {
+		return query(network.compile(q), method, numSamples);
+	}
+
+	/**
+	* Approximates a compiled query with the given method, reusing and extending cached samples
+	*
+	* @param plan
+	* 			The query plan
+	* @param method
+	* 			The sampling method
+	* @param numSamples
+	* 			The smallest number of samples the result should be based on
+	* @return
+	* 			A probability distribution over the query variables
+	*/
+	public WeightedSet query(QueryPlan plan, SamplingMethod method, int numSamples) {
+		while(true) {
+			long generation = network.getRandomSourceGeneration();
+			String key = key(plan, method, generation);
+			Entry entry;
+			synchronized(this) {
+				entry = entries.get(key);
+				if(entry == null) {
+					misses++;
+					entry = new Entry(plan);
+					entries.put(key, entry);
+				}
+				else if(entry.numSamples >= numSamples) {
+					hits++;
+				}
+				else {
+					refinements++;
+				}
+			}
+
+			synchronized(entry) {
+				if(entry.numSamples < numSamples) {
+					RandomSource random = network.newRandomStream(generation);
+					if(random == null) {
+						continue; // The root was replaced after the key was made
+					}
+					method.sample(network.getCompiledNetwork(), plan, numSamples - entry.numSamples, random, entry.tally);
+					entry.numSamples = numSamples;
+				}
+				WeightedSet distribution = plan.newTally();
+				distribution.merge(entry.tally);
+				return BayesianNetwork.normalize(distribution);
+			}
+		}
+	}
+
+	//The root source, the method and the query variables and evidence by node id, which puts
+	//them in a fixed order
+	private static String key(QueryPlan plan, SamplingMethod method, long generation) {
+		StringBuilder key = new StringBuilder().append(generation).append(' ').append(method.name());
+		for(int id : plan.getQueryIds()){
+			key.append(' ').append(id);
+		}
+		key.append(" |");
+		for(int id : plan.getEvidenceIds()){
+			key.append(' ').append(id).append('=').append(plan.getEvidence()[id]);
+		}
+		return key.toString();
+	}
+
+
+	/**
+	* Returns the number of requests answered from the cache without sampling
+	* @return The number of hits
+	*/
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	* Returns the number of requests that extended a cached result with more samples
+	* @return The number of refinements
+	*/
+	public synchronized long getRefinements() {
+		return refinements;
+	}
+
+	/**
+	* Returns the number of requests for queries that were not cached
+	* @return The number of misses
+	*/
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	* Returns the number of cached results
+	* @return The number of entries in the cache
+	*/
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	* Removes every cached result. The counters are kept.
+	*/
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
@@ -0,0 +1,290 @@
+package bn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tui.Query;
+import util.WeightedSet;
+
+/**
+* A query resolved against a compiled network.
+*
+* The variable and state names of a Query are looked up once, when the plan is created, so
+* the inference methods only work with node ids and states. The query variables are numbered
+* in the topological order of the network. A configuration of the query variables is
+* identified by its rank, the mixed radix number whose digits are their states, the first
+* query variable being the most significant: the rank of a sample is the sum of
+* state * stride over the query variables. When every query variable is boolean, position p
+* corresponds to bit (querySize-1-p) of the rank (see BitVector).
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class QueryPlan {
+
+	private final int[] queryIds; //the ids of the query variables in topological order
+	private final int[] queryCardinalities; //the number of states of every query variable
+	private final long[] queryStrides; //for every node, its weight in the rank when it is a query variable (0 otherwise)
+	private final int[] evidenceIds; //the ids of the evidence variables in topological order
+	private final int[] evidence; //for every node, the observed state or -1 if unobserved
+	private final int[] sampleOrder; //the query and evidence variables and their ancestors, evidence as early as possible
+
+	/**
+	* Resolves a query against a compiled network
+	*
+	* @param network
+	* 			The compiled network
+	* @param q
+	* 			The query
+	*
+	* @throws IllegalArgumentException if the query names a variable or state that is not in the
+	* 			network or its query variables have more than 2^63 configurations
+	*/
+	public QueryPlan(CompiledNetwork network, Query q) {
+		int n = network.size();
+		List<String> unknown = new ArrayList<String>();
+
+		boolean[] isQuery = new boolean[n];
+		for(String name : q.queryVariables){
+			int id = network.getId(name);
+			if(id < 0){
+				unknown.add("\"" + name + "\"");
+			}
+			else{
+				isQuery[id] = true;
+			}
+		}
+
+		evidence = new int[n];
+		Arrays.fill(evidence, -1);
+		List<String> unknownStates = new ArrayList<String>();
+		if(q.evidenceVariables != null){
+			for(String name : q.evidenceVariables){
+				int id = network.getId(name);
+				if(id < 0){
+					unknown.add("\"" + name + "\"");
+				}
+				else{
+					evidence[id] = state(network, id, q.evidenceValues.get(name));
+					if(evidence[id] < 0){
+						unknownStates.add(name + "=" + q.evidenceValues.get(name));
+					}
+				}
+			}
+		}
+
+		if(!unknown.isEmpty()){
+			throw new IllegalArgumentException("Unknown variables: " + String.join(", ", unknown));
+		}
+		if(!unknownStates.isEmpty()){
+			throw new IllegalArgumentException("Unknown states: " + String.join(", ", unknownStates));
+		}
+
+		int querySize = q.queryVariables.size();
+		queryIds = new int[querySize];
+		queryCardinalities = new int[querySize];
+		queryStrides = new long[n];
+		int numEvidence = 0;
+		for(int i = 0, position = 0; i < n; i++){
+			if(isQuery[i]){
+				queryIds[position] = i;
+				queryCardinalities[position] = network.getCardinality(i);
+				position++;
+			}
+			if(evidence[i] >= 0){
+				numEvidence++;
+			}
+		}
+		try {
+			long maxRank = 0;
+			for(int position = 0; position < querySize; position++){
+				int c = queryCardinalities[position];
+				maxRank = Math.addExact(Math.multiplyExact(maxRank, c), c - 1);
+			}
+		}
+		catch(ArithmeticException e) {
+			throw new IllegalArgumentException("The query variables have more than 2^63 configurations");
+		}
+		long stride = 1;
+		for(int position = querySize - 1; position >= 0; position--){
+			queryStrides[queryIds[position]] = stride;
+			stride *= queryCardinalities[position];
+		}
+
+		evidenceIds = new int[numEvidence];
+		for(int i = 0, e = 0; i < n; i++){
+			if(evidence[i] >= 0){
+				evidenceIds[e++] = i;
+			}
+		}
+
+		sampleOrder = sampleOrder(network, isQuery, evidence, evidenceIds);
+	}
+
+	//The state of a node with the given name, or -1 if there is none. Any node with two
+	//states accepts "true" and "false" for its first and second state.
+	private static int state(CompiledNetwork network, int id, String name) {
+		int state = network.getStateIndex(id, name);
+		if(state < 0 && network.getCardinality(id) == 2){
+			state = name.equals("true") ? 0 : name.equals("false") ? 1 : -1;
+		}
+		return state;
+	}
+
+	//Orders the query and evidence variables and their ancestors so that every evidence
+	//variable comes right after its own ancestors. Nodes outside this set never influence
+	//the query and are not sampled at all.
+	static int[] sampleOrder(CompiledNetwork network, boolean[] isQuery, int[] evidence, int[] evidenceIds) {
+		int n = network.size();
+		boolean[] relevant = new boolean[n];
+		for(int i = n - 1; i >= 0; i--){
+			relevant[i] |= isQuery[i] || evidence[i] >= 0;
+			if(relevant[i]){
+				for(int p : network.getParents(i)){
+					relevant[p] = true;
+				}
+			}
+		}
+
+		int[] order = new int[n];
+		int size = 0;
+		boolean[] placed = new boolean[n];
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		for(int e : evidenceIds){
+			size = place(network, e, placed, order, size, stack, next);
+		}
+		for(int i = 0; i < n; i++){
+			if(relevant[i] && !placed[i]){
+				placed[i] = true;
+				order[size++] = i;
+			}
+		}
+		return Arrays.copyOf(order, size);
+	}
+
+	//Appends a node after all of its ancestors that have not been placed yet, visiting the
+	//parents depth first in parent order. The stack is explicit so that long chains cannot
+	//overflow; next holds the next parent to visit of every node on it.
+	private static int place(CompiledNetwork network, int id, boolean[] placed, int[] order, int size, int[] stack, int[] next) {
+		if(placed[id]){
+			return size;
+		}
+		int depth = 0;
+		stack[depth] = id;
+		next[depth++] = 0;
+		while(depth > 0){
+			int top = stack[depth - 1];
+			int[] parents = network.getParents(top);
+			if(next[depth - 1] < parents.length){
+				int p = parents[next[depth - 1]++];
+				if(!placed[p]){ //not on the stack either, as the network is acyclic
+					stack[depth] = p;
+					next[depth++] = 0;
+				}
+			}
+			else{
+				depth--;
+				placed[top] = true;
+				order[size++] = top;
+			}
+		}
+		return size;
+	}
+
+
+	/**
+	* Returns the number of query variables
+	* @return The number of query variables
+	*/
+	public int getQuerySize() {
+		return queryIds.length;
+	}
+
+	/**
+	* Returns the ids of the query variables
+	* @return The query variable ids, in topological order
+	*/
+	public int[] getQueryIds() {
+		return queryIds;
+	}
+
+	/**
+	* Returns the number of states of every query variable
+	* @return The cardinalities of the query variables, in topological order
+	*/
+	public int[] getQueryCardinalities() {
+		return queryCardinalities;
+	}
+
+	/**
+	* Returns, for every node, the amount its state is multiplied by in the rank of a
+	* configuration of the query variables. For a boolean query variable this is the rank
+	* bit that marks it as false.
+	*
+	* @return The stride of every node (0 for nodes that are not query variables)
+	*/
+	public long[] getQueryStrides() {
+		return queryStrides;
+	}
+
+	/**
+	* Returns the state of a query variable in a configuration of the query variables
+	*
+	* @param rank
+	* 			The rank of a configuration
+	* @param position
+	* 			The position of the query variable, in topological order
+	* @return The state of the query variable
+	*/
+	public int stateOf(long rank, int position) {
+		return (int)(rank / queryStrides[queryIds[position]] % queryCardinalities[position]);
+	}
+
+	/**
+	* Creates an empty tally over the configurations of the query variables
+	* @return A weighted set with every configuration at weight 0
+	*/
+	public WeightedSet newTally() {
+		return new WeightedSet(queryCardinalities);
+	}
+
+	/**
+	* Returns the ids of the evidence variables
+	* @return The evidence variable ids, in topological order
+	*/
+	public int[] getEvidenceIds() {
+		return evidenceIds;
+	}
+
+	/**
+	* Returns the evidence of every node
+	* @return For every node, the observed state (0 for true and 1 for false if the node is
+	* 			boolean) or -1 if unobserved
+	*/
+	public int[] getEvidence() {
+		return evidence;
+	}
+
+	/**
+	* Returns the nodes that must be sampled to answer the query, in a valid sampling order.
+	* These are the query and evidence variables and their ancestors; every evidence variable
+	* is placed as soon as its ancestors have been, so rejection sampling can give up on a
+	* sample as early as possible.
+	*
+	* @return The ids of the nodes to sample, parents before children
+	*/
+	public int[] getSampleOrder() {
+		return sampleOrder;
+	}
+
+	/**
+	* Returns whether the query has evidence
+	* @return True if at least one variable is observed
+	*/
+	public boolean hasEvidence() {
+		return evidenceIds.length > 0;
+	}
+}
@@ -0,0 +1,66 @@
+package bn;
+
+import util.WeightedSet;
+
+/**
+* The outcome of a rejection sampling run: the estimated distribution together with how
+* many of the drawn samples agreed with the evidence.
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class RejectionResult {
+
+	private WeightedSet distribution;
+	private long acceptedSamples;
+	private long numSamples;
+
+	/**
+	* Creates a rejection sampling result
+	*
+	* @param distribution
+	* 			The normalized distribution over the query variables
+	* @param acceptedSamples
+	* 			The number of samples consistent with the evidence
+	* @param numSamples
+	* 			The number of samples drawn
+	*/
+	public RejectionResult(WeightedSet distribution, long acceptedSamples, long numSamples) {
+		this.distribution = distribution;
+		this.acceptedSamples = acceptedSamples;
+		this.numSamples = numSamples;
+	}
+
+	/**
+	* Returns the estimated distribution
+	* @return A probability distribution over the query variables
+	*/
+	public WeightedSet getDistribution() {
+		return distribution;
+	}
+
+	/**
+	* Returns the number of samples that were consistent with the evidence
+	* @return The number of accepted samples
+	*/
+	public long getAcceptedSamples() {
+		return acceptedSamples;
+	}
+
+	/**
+	* Returns the number of samples that were drawn
+	* @return The number of samples drawn, accepted or not
+	*/
+	public long getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	* Returns the fraction of samples that were consistent with the evidence
+	* @return The acceptance rate, between 0 and 1
+	*/
+	public double getAcceptanceRate() {
+		return numSamples == 0 ? 0.0 : (double)acceptedSamples / numSamples;
+	}
+}
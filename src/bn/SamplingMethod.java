@@ -0,0 +1,44 @@
+package bn;
+
+
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+* The approximate inference methods offered by a Bayesian network
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public enum SamplingMethod {
+	DIRECT_SAMPLING,
+	REJECTION_SAMPLING,
+	LIKELIHOOD_WEIGHTING;
+
+	/**
+	* Draws samples with this method and adds them to a tally
+	*
+	* @param network
+	* 			The compiled network
+	* @param plan
+	* 			The query resolved against the network
+	* @param numSamples
+	* 			The number of samples
+	* @param random
+	* 			The random number stream used by this sampler only
+	* @param tally
+	* 			The tally that the samples are added to
+	* @return The sum of the squared weights of the samples that were added
+	*/
+	public double sample(CompiledNetwork network, QueryPlan plan, int numSamples, RandomSource random, WeightedSet tally) {
+		switch(this) {
+			case DIRECT_SAMPLING:
+				return network.directSample(plan, numSamples, random, tally);
+			case REJECTION_SAMPLING:
+				return network.rejectionSample(plan, numSamples, random, tally);
+			default:
+				return network.likelihoodWeighting(plan, numSamples, random, tally);
+		}
+	}
+}
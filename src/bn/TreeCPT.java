@@ -0,0 +1,95 @@
+package bn;
+
+import java.nio.DoubleBuffer;
+
+/**
+* A context-specific CPT in the form of a decision tree over the parents.
+*
+* Every inner node of the tree tests one parent and every leaf holds p(X = true | parents(X))
+* for the configurations that reach it. Configurations that share a probability share a
+* leaf, so a node whose probability depends on only a few parents in most contexts needs
+* far fewer parameters than its dense table. A parent is tested at most once on any path,
+* so a lookup takes at most k steps.
+*
+* The tree is laid out in preorder with two doubles per node:
+*
+* 		leaf:	-1, the probability
+* 		test:	the position of the parent in parent order, the number of doubles in the subtree
+* 				for a true parent, followed by that subtree and then the subtree for a false parent
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class TreeCPT extends CPT {
+	/** The first double of a leaf */
+	public static final double LEAF = -1;
+
+	/**
+	* Creates a tree CPT from its layout
+	*
+	* @param numParents
+	* 			The number of parents of the node
+	* @param tree
+	* 			The tree in the layout described above
+	*
+	* @throws IllegalArgumentException if the layout is not a valid tree over the parents
+	*/
+	public TreeCPT(int numParents, double[] tree) {
+		super(booleanParents(numParents), 2, tree.clone());
+	}
+
+	@Override
+	byte getKind() {
+		return TREE;
+	}
+
+	//Evaluates a tree stored at the given offset by following the values of the parents to a leaf
+	static double evaluate(DoubleBuffer parameters, int offset, int[] parents, int[] states) {
+		int position = offset;
+		double test;
+		while((test = parameters.get(position)) >= 0){
+			position += states[parents[(int)test]] == 0 ? 2 : 2 + (int)parameters.get(position + 1);
+		}
+		return parameters.get(position + 1);
+	}
+
+	//Evaluates a tree stored at the given offset for the row of its k parents
+	static double evaluate(DoubleBuffer parameters, int offset, int k, int row) {
+		int position = offset;
+		double test;
+		while((test = parameters.get(position)) >= 0){
+			boolean value = ((row >>> (k - 1 - (int)test)) & 1) == 0;
+			position += value ? 2 : 2 + (int)parameters.get(position + 1);
+		}
+		return parameters.get(position + 1);
+	}
+
+	//The number of doubles used by the subtree at the given offset, checking that it is a
+	//valid tree in which no parent marked as used is tested again
+	static int size(DoubleBuffer parameters, int offset, int numParents, boolean[] used) {
+		if(offset < 0 || offset + 2 > parameters.capacity()){
+			throw new IllegalArgumentException("The tree is truncated");
+		}
+		double test = parameters.get(offset);
+		if(test == LEAF){
+			checkProbability(parameters.get(offset + 1));
+			return 2;
+		}
+		int p = (int)test;
+		if(p != test || p < 0 || p >= numParents){
+			throw new IllegalArgumentException("The tree tests " + test + ", which is not a parent position");
+		}
+		if(used[p]){
+			throw new IllegalArgumentException("The tree tests parent " + p + " twice on one path");
+		}
+		used[p] = true;
+		int trueSize = size(parameters, offset + 2, numParents, used);
+		if(parameters.get(offset + 1) != trueSize){
+			throw new IllegalArgumentException("The tree gives the wrong size for the true branch of parent " + p);
+		}
+		int falseSize = size(parameters, offset + 2 + trueSize, numParents, used);
+		used[p] = false;
+		return 2 + trueSize + falseSize;
+	}
+}
@@ -0,0 +1,161 @@
+package bn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import util.WeightedSet;
+
+/**
+* Answers queries exactly by variable elimination.
+*
+* Before eliminating, the network is pruned to the query and evidence variables and their
+* ancestors; every other node is barren and sums out to 1. The CPT of a node is only turned
+* into a factor once a query needs it, so a barren node is never expanded. The evidence is applied to the
+* CPT factors directly and the remaining hidden variables are eliminated greedily in
+* min-fill order, i.e. the next variable is always the one whose elimination adds the
+* fewest new edges to the interaction graph (see EliminationGraph).
+*
+* @author Sarah Walling-Bell
+* @version March 29, 2019
+*
+*/
+public class VariableElimination {
+
+	private CompiledNetwork compiled;
+	private Factor[] cpts; //the CPT of every node needed so far as a factor, indexed by node id
+
+	/**
+	* Prepares variable elimination over the given network
+	*
+	* @param network
+	* 			The Bayesian network
+	*/
+	public VariableElimination(BayesianNetwork network) {
+		this.compiled = network.getCompiledNetwork();
+		cpts = new Factor[compiled.size()];
+	}
+
+	//The CPT of a node as a factor, built on first use. Factors are immutable, so a factor
+	//built by two threads at once is simply built twice.
+	private Factor cpt(int i) {
+		Factor f = cpts[i];
+		if(f == null){
+			f = Factor.fromCPT(compiled, i);
+			cpts[i] = f;
+		}
+		return f;
+	}
+
+
+	/**
+	* Computes the exact answer to a query
+	*
+	* @param plan
+	* 			The query resolved against the network
+	* @return
+	* 			A probability distribution over the query variables
+	*
+	* @throws IllegalStateException if a relevant CPT or an intermediate factor is too large
+	*/
+	public WeightedSet query(QueryPlan plan) {
+		int n = compiled.size();
+		long[] queryStrides = plan.getQueryStrides();
+		int[] evidence = plan.getEvidence();
+
+		//keep the query and evidence variables and their ancestors (nodes are in topological order)
+		boolean[] relevant = new boolean[n];
+		for(int i = n - 1; i >= 0; i--){
+			if(queryStrides[i] != 0 || evidence[i] >= 0){
+				relevant[i] = true;
+			}
+			if(relevant[i]){
+				for(int p : compiled.getParents(i)){
+					relevant[p] = true;
+				}
+			}
+		}
+
+		List<Factor> factors = new ArrayList<Factor>();
+		boolean[] hidden = new boolean[n];
+		for(int i = 0; i < n; i++){
+			if(!relevant[i]){
+				continue;
+			}
+			Factor f = cpt(i);
+			for(int v : f.getVariables()){
+				if(evidence[v] >= 0){
+					f = f.restrict(v, evidence[v]);
+				}
+			}
+			factors.add(f);
+			hidden[i] = queryStrides[i] == 0 && evidence[i] < 0;
+		}
+
+		//eliminate the hidden variables
+		EliminationGraph graph = new EliminationGraph(n);
+		for(Factor f : factors){
+			graph.connect(f.getVariables());
+		}
+		int var;
+		while((var = graph.next(hidden)) >= 0){
+			hidden[var] = false;
+			graph.eliminate(var);
+			Factor product = null;
+			for(int f = factors.size() - 1; f >= 0; f--){
+				if(factors.get(f).indexOf(var) >= 0){
+					Factor factor = factors.remove(f);
+					product = product == null ? factor : product.multiply(factor);
+				}
+			}
+			if(product != null){
+				factors.add(product.sumOut(var));
+			}
+		}
+
+		//what remains is the joint of the unobserved query variables and the evidence
+		Factor joint = new Factor(new int[0], new double[] { 1 });
+		for(Factor f : factors){
+			joint = joint.multiply(f);
+		}
+
+		//observed query variables keep their evidence state in every configuration
+		long fixedRank = 0;
+		for(int i = 0; i < n; i++){
+			if(queryStrides[i] != 0 && evidence[i] >= 0){
+				fixedRank += evidence[i] * queryStrides[i];
+			}
+		}
+
+		return toDistribution(joint, plan, fixedRank);
+	}
+
+
+	//Converts a factor over query variables into a normalized distribution over the query
+	static WeightedSet toDistribution(Factor joint, QueryPlan plan, long fixedRank) {
+		int[] vars = joint.getVariables();
+		int[] cards = joint.getCardinalities();
+		double[] values = joint.getValues();
+		long[] queryStrides = plan.getQueryStrides();
+		long[] strides = new long[vars.length];
+		for(int j = 0; j < vars.length; j++){
+			strides[j] = queryStrides[vars[j]];
+		}
+
+		WeightedSet tally = plan.newTally();
+		int[] states = new int[vars.length];
+		long rank = fixedRank;
+		for(int index = 0; index < values.length; index++){
+			tally.increment(rank, values[index]);
+			//advance to the next configuration, last variable fastest
+			for(int j = vars.length - 1; j >= 0; j--){
+				rank += strides[j];
+				if(++states[j] < cards[j]){
+					break;
+				}
+				rank -= cards[j] * strides[j];
+				states[j] = 0;
+			}
+		}
+		return BayesianNetwork.normalize(tally);
+	}
+}
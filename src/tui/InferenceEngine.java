@@ -1,12 +1,25 @@
 package tui;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.Scanner;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import bn.BayesianNetwork;
-import bn.Node;
+import bn.BinaryNetwork;
+import bn.CompiledNetwork;
+import bn.AdaptiveSampler;
+import bn.Estimate;
+import bn.GibbsResult;
+import bn.GibbsSampler;
+import bn.ImportanceSampler;
+import bn.ParallelSampler;
+import bn.QueryCache;
+import bn.QueryPlan;
+import bn.RejectionResult;
+import bn.SamplingMethod;
 import util.WeightedSet;
-import util.BitVector;
 
 /**
  * This class provides a text user interface for querying a Bayesian network.
@@ -18,49 +31,58 @@ public class InferenceEngine {
 	private static final int DIRECT_SAMPLING = 1;
 	private static final int REJECTION_SAMPLING = 2;
 	private static final int LIKELIHOOD_WEIGHTING = 3;
+	private static final int VARIABLE_ELIMINATION = 4;
+	private static final int JUNCTION_TREE = 5;
+	private static final int GIBBS_SAMPLING = 6;
+	private static final int IMPORTANCE_SAMPLING = 7;
+
+	// Budget for adaptive sampling
+	private static final long MAX_ADAPTIVE_SAMPLES = 100000000L;
+	private static final long MAX_ADAPTIVE_MILLIS = 10000L;
 
 	private static BayesianNetwork bn;
 	private static Scanner scanner;
 	private static int numSamples;
+	private static AdaptiveSampler adaptive; // null unless a target standard error was given
 	private static int inferenceMethod;	
+	private static QueryCache cache; // null unless a cache size was given
+	private static ParallelSampler parallel; // null unless sampling runs on more than one thread
 
 
-	// Prints result of a query or error message if query is ill-formed
-	private static void printDistribution(Query q, WeightedSet d) {
-		Node[] nodes = bn.getNodes();
+	// Prints result of a query, one line per configuration of the query variables
+	private static void printDistribution(Query q, QueryPlan plan, WeightedSet d) {
+		CompiledNetwork network = bn.getCompiledNetwork();
+		int[] queryIds = plan.getQueryIds();
 
 		String evidence = "";
 		if(q.evidenceVariables != null) {
 			evidence = q.constructEvidenceString();
 		}
 
-		Set<BitVector> events = d.getEvents();
-		for(BitVector event : events) {
-			String outside = "p(";
+		for(long rank : d.getEventRanks()) {
 			String inside = "";
-			int position = 0;				
-
-			for(Node n : nodes) {
-				if(q.queryVariables.contains(n.getName())) {
-					inside += " " + n.getName() + "=" + event.get(position) + ",";
-					position++;
-				}
-			}		
-			inside = inside.trim();
-			if(inside.equals("")) {
-				printError();
-				return;
+			for(int j = 0; j < queryIds.length; j++) {
+				int state = plan.stateOf(rank, j);
+				inside += (j > 0 ? ", " : "") + network.getName(queryIds[j]) + "=" + network.getStateName(queryIds[j], state);
 			}
-			inside = inside.substring(0, inside.length()-1);
 
 			if(!evidence.equals("")) {
 				inside += " | " + evidence;
 			}
-			inside += ") = " + d.getWeight(event);
-			System.out.println(outside + inside);
+			inside += ") = " + d.getWeight(rank);
+			System.out.println("p(" + inside);
 		}		
 	}
 
+	// Samples until the target standard error is reached and reports how it went
+	private static WeightedSet estimate(QueryPlan plan, SamplingMethod method) {
+		Estimate e = adaptive.estimate(plan, method);
+		System.out.println((e.isConverged() ? "Converged" : "Budget exhausted") + " after " + e.getNumSamples()
+			+ " samples (effective sample size " + Math.round(e.getEffectiveSampleSize())
+			+ ", max standard error " + e.getMaxStandardError() + ")");
+		return e.getDistribution();
+	}
+
 	// Prints an error message
 	private static void printError() {
 		System.out.println("Invalid Input\n");
@@ -68,8 +90,27 @@ public class InferenceEngine {
 
 	// Reads the user's preferences and sets up the entire system
 	private static void readAndSetPreferences(String filename) {
-		Node[] nodes = Reader.read(filename);
-		bn = new BayesianNetwork(nodes);		
+		try {
+			// A binary network is mapped into memory, a text network is parsed
+			if(filename.endsWith(".bnb")) {
+				bn = new BayesianNetwork(BinaryNetwork.load(Paths.get(filename)));
+			}
+			else {
+				bn = new BayesianNetwork(Reader.read(filename));
+			}
+		}
+		catch(NoSuchFileException e) {
+			System.err.println("Error: Could not find file \"" + filename + "\".");
+			System.exit(-1);
+		}
+		catch(NetworkFormatException e) {
+			System.err.println("Error: File \"" + filename + "\" has incorrect format. " + e.getMessage());
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.err.println("Error: Could not read file \"" + filename + "\". " + e.getMessage());
+			System.exit(-1);
+		}
 		scanner = new Scanner(System.in);
 
 		// Welcome message
@@ -77,8 +118,8 @@ public class InferenceEngine {
 		System.out.println("The Bayesian network being analyzed is: " + filename );
 
 		System.out.println("\nThe nodes in the network are:");
-		for(Node n : nodes) {
-			System.out.println(n.getName());
+		for(int i = 0; i < bn.getCompiledNetwork().size(); i++) {
+			System.out.println(bn.getCompiledNetwork().getName(i));
 		}		
 		System.out.println("\n");
 
@@ -87,6 +128,10 @@ public class InferenceEngine {
 		System.out.println("1. Direct sampling (no evidence)");
 		System.out.println("2. Rejection sampling (requires evidence)");
 		System.out.println("3. Likelihood Weighting");
+		System.out.println("4. Variable elimination (exact)");
+		System.out.println("5. Junction tree (exact, compiled once)");
+		System.out.println("6. Gibbs sampling (for unlikely evidence)");
+		System.out.println("7. Adaptive importance sampling (for unlikely evidence)");
 		System.out.print("Choose an inference method: ");
 
 		inferenceMethod = -1;
@@ -100,27 +145,74 @@ public class InferenceEngine {
 		}
 
 		// Set number of samples
-		System.out.print("Enter the number of samples: ");
 		numSamples = -1;
+		if(inferenceMethod == VARIABLE_ELIMINATION || inferenceMethod == JUNCTION_TREE) {
+			System.out.println();
+			return;
+		}
+		// A number below 1 is a target standard error for adaptive sampling
+		System.out.print("Enter the number of samples (or a target standard error, e.g. 0.005): ");
 		while(numSamples == -1) {
 			try {
-				numSamples = Integer.parseInt(scanner.nextLine());
+				double input = Double.parseDouble(scanner.nextLine());
+				if(0 < input && input < 1 && inferenceMethod != GIBBS_SAMPLING && inferenceMethod != IMPORTANCE_SAMPLING) {
+					adaptive = new AdaptiveSampler(bn, input, MAX_ADAPTIVE_SAMPLES, MAX_ADAPTIVE_MILLIS);
+					numSamples = 0;
+				}
+				else if(input >= 1 && input == Math.rint(input) && input <= Integer.MAX_VALUE) {
+					numSamples = (int)input;
+				}
+				else {
+					System.out.print("Enter the number of samples: ");
+				}
 			}
 			catch(NumberFormatException e) {
 				System.out.print("Enter the number of samples: ");
 			}		
-		}		
+		}
+
+		// A fixed number of samples can be split across threads, each with its own stream
+		if(numSamples > 0 && (inferenceMethod == DIRECT_SAMPLING || inferenceMethod == REJECTION_SAMPLING
+				|| inferenceMethod == LIKELIHOOD_WEIGHTING)) {
+			System.out.print("Enter the number of threads (1 samples on this thread): ");
+			int threads = -1;
+			while(threads < 1) {
+				try {
+					threads = Integer.parseInt(scanner.nextLine());
+				}
+				catch(NumberFormatException e) {
+					threads = -1;
+				}
+				if(threads < 1) {
+					System.out.print("Enter the number of threads: ");
+				}
+			}
+			if(threads > 1) {
+				parallel = new ParallelSampler(bn, new ForkJoinPool(threads), threads);
+			}
+		}
 		System.out.println();
 	}
 
 
 	public static void main(String[] args) {
-		if(args.length != 1) {
-			System.out.println("Usage: java InferenceEngine <file>");
+		if(args.length < 1 || args.length > 2) {
+			System.out.println("Usage: java InferenceEngine <file> [<cache size>]");
 			System.exit(-1);
 		}
 		readAndSetPreferences(args[0]);
 
+		// Optionally keep the most recent sampled results for repeated queries
+		if(args.length == 2) {
+			try {
+				cache = new QueryCache(bn, Integer.parseInt(args[1]));
+			}
+			catch(IllegalArgumentException e) {
+				System.err.println("Error: The cache size must be a positive integer");
+				System.exit(-1);
+			}
+		}
+
 		while(true) {
 			System.out.print("Enter a query (or type \"quit\"): ");
 			String input = scanner.nextLine().toLowerCase();
@@ -135,16 +227,72 @@ public class InferenceEngine {
 				continue;
 			}
 
+			// Resolve the variable names against the network
+			QueryPlan plan;
+			try {
+				plan = bn.compile(q);
+			}
+			catch(IllegalArgumentException e) {
+				System.out.println("Error: " + e.getMessage() + "\n");
+				continue;
+			}
+
 			// Create a new weighted set to hold the distribution
 			WeightedSet d = null;
 
+			// Perform exact inference, which needs the full table of every relevant CPT
+			if(inferenceMethod == VARIABLE_ELIMINATION || inferenceMethod == JUNCTION_TREE) {
+				try {
+					d = inferenceMethod == VARIABLE_ELIMINATION ? bn.variableElimination(plan) : bn.junctionTree(plan);
+				}
+				catch(IllegalStateException e) {
+					System.out.println("Error: " + e.getMessage() + "\n");
+					continue;
+				}
+			}
+
+			// Perform Gibbs sampling
+			else if(inferenceMethod == GIBBS_SAMPLING) {
+				GibbsResult r = new GibbsSampler(bn).sample(plan, numSamples);
+				d = r.getDistribution();
+				System.out.println("Kept " + r.getNumSamples() + " samples from " + r.getNumChains()
+					+ " chains (R-hat " + r.getRHat() + ")");
+			}
+
+			// Perform adaptive importance sampling
+			else if(inferenceMethod == IMPORTANCE_SAMPLING) {
+				Estimate e;
+				try {
+					e = new ImportanceSampler(bn).estimate(plan, numSamples);
+				}
+				catch(IllegalArgumentException ex) {
+					System.out.println("Error: " + ex.getMessage() + "\n");
+					continue;
+				}
+				d = e.getDistribution();
+				System.out.println((e.isConverged() ? "Converged" : "Not converged") + " with effective sample size "
+					+ Math.round(e.getEffectiveSampleSize()) + " of " + e.getNumSamples() + " samples (max standard error "
+					+ e.getMaxStandardError() + ")");
+			}
+
 			// Perform Direct Sampling
-			if(inferenceMethod == DIRECT_SAMPLING) {
+			else if(inferenceMethod == DIRECT_SAMPLING) {
 				if(q.evidenceVariables != null) {
 					System.out.println("Error: Your query cannot contain evidence\n");
 					continue;
 				}
-				d = bn.directSample(q, numSamples);								
+				if(adaptive != null) {
+					d = estimate(plan, SamplingMethod.DIRECT_SAMPLING);
+				}
+				else if(cache != null) {
+					d = cache.query(plan, SamplingMethod.DIRECT_SAMPLING, numSamples);
+				}
+				else if(parallel != null) {
+					d = parallel.directSample(q, numSamples);
+				}
+				else {
+					d = bn.directSample(plan, numSamples);
+				}
 			}
 			
 			// Perform Rejection sampling or Likelihood Weighting
@@ -153,21 +301,40 @@ public class InferenceEngine {
 					System.out.println("Error: Your query must contain evidence\n");
 					continue;
 				}
-				if(inferenceMethod == REJECTION_SAMPLING) {
-					d = bn.rejectionSampling(q, numSamples);										
+				if(adaptive != null) {
+					d = estimate(plan, inferenceMethod == REJECTION_SAMPLING
+						? SamplingMethod.REJECTION_SAMPLING : SamplingMethod.LIKELIHOOD_WEIGHTING);
+				}
+				else if(cache != null) {
+					d = cache.query(plan, inferenceMethod == REJECTION_SAMPLING
+						? SamplingMethod.REJECTION_SAMPLING : SamplingMethod.LIKELIHOOD_WEIGHTING, numSamples);
+				}
+				else if(parallel != null) {
+					d = inferenceMethod == REJECTION_SAMPLING
+						? parallel.rejectionSampling(q, numSamples) : parallel.likelihoodWeighting(q, numSamples);
+				}
+				else if(inferenceMethod == REJECTION_SAMPLING) {
+					RejectionResult r = bn.rejectionSamplingResult(plan, numSamples);
+					d = r.getDistribution();
+					System.out.println("Accepted " + r.getAcceptedSamples() + " of " + r.getNumSamples()
+						+ " samples (" + (100 * r.getAcceptanceRate()) + "%)");
 				}
 				else if(inferenceMethod == LIKELIHOOD_WEIGHTING) {
-					d = bn.likelihoodWeighting(q, numSamples);
+					d = bn.likelihoodWeighting(plan, numSamples);
 				}
 			}
 			
 			// Print the query distribution
 			if(d != null) {
-				printDistribution(q, d);
+				printDistribution(q, plan, d);
 			}
 			System.out.println();
 		}
 
+		if(cache != null) {
+			System.out.println("\nCache: " + cache.getHits() + " hits, " + cache.getRefinements()
+				+ " refinements, " + cache.getMisses() + " misses");
+		}
 		System.out.println("\n===== Exiting the Inference Engine =====");
 	}
 }
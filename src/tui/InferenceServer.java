@@ -0,0 +1,319 @@
+package tui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import bn.BayesianNetwork;
+import bn.BinaryNetwork;
+import bn.CompiledNetwork;
+import bn.GibbsSampler;
+import bn.ImportanceSampler;
+import bn.QueryPlan;
+import util.RandomSource;
+import util.WeightedSet;
+
+/**
+ * Serves queries on a Bayesian network over HTTP, using the JDK's built-in server.
+ *
+ * The network is loaded once and shared, read-only, by every request; each request gets its
+ * own sampling state and random number stream. A query is a GET request such as
+ *
+ * 		/query?q=p(burglary|john_calls,mary_calls)&method=lw&samples=100000&seed=42
+ *
+ * where method is one of direct, rejection, lw (the default), gibbs, ais, ve or jt, samples
+ * defaults to DEFAULT_SAMPLES and may be at most MAX_SAMPLES, and seed, if given, makes the
+ * answer reproducible. The answer
+ * is plain text with one line per outcome, in the same format as InferenceEngine.
+ * A malformed request, or a query its method cannot answer (direct sampling with evidence,
+ * rejection sampling without), gets 400 Bad Request. Every query runs on the thread of its
+ * request, Gibbs sampling included, so a running query occupies exactly one thread.
+ *
+ * At most a fixed number of queries run at once and a bounded number more may wait for
+ * their turn. Any request beyond that is turned away at once with 503 Service Unavailable,
+ * so an overloaded server sheds load instead of queueing without bound. Requests are handled
+ * by maxRunning + maxWaiting + 1 threads: the admitted requests never hold more than all
+ * but one of them, which leaves a thread to turn the others away.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public class InferenceServer {
+	/** The number of samples used when a request does not say */
+	public static final int DEFAULT_SAMPLES = 100000;
+	/** The largest number of samples a request may ask for */
+	public static final int MAX_SAMPLES = 10000000;
+
+	private final BayesianNetwork bn;
+	private final HttpServer server;
+	private final ThreadPoolExecutor executor;
+	private final Semaphore admitted; // the requests that are running or waiting to run
+	private final Semaphore running; // the requests that are running
+
+	/**
+	 * Creates a server for a network. The server does not accept requests until start() is called.
+	 *
+	 * @param bn
+	 * 			The Bayesian network to query
+	 * @param port
+	 * 			The port to listen on, or 0 for any free port
+	 * @param maxRunning
+	 * 			The largest number of queries answered at once
+	 * @param maxWaiting
+	 * 			The largest number of queries waiting for their turn
+	 * @throws IOException if the server cannot listen on the port
+	 */
+	public InferenceServer(BayesianNetwork bn, int port, int maxRunning, int maxWaiting) throws IOException {
+		if(maxRunning < 1 || maxWaiting < 0) {
+			throw new IllegalArgumentException("At least one query must be able to run");
+		}
+		this.bn = bn;
+		this.admitted = new Semaphore(maxRunning + maxWaiting);
+		this.running = new Semaphore(maxRunning);
+		int threads = maxRunning + maxWaiting + 1;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		executor.allowCoreThreadTimeOut(true);
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/query", this::handle);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to the given time for running queries to finish
+	 * @param seconds
+	 * 			The longest time to wait
+	 */
+	public void stop(int seconds) {
+		server.stop(seconds);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 * @return The port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if(!exchange.getRequestMethod().equals("GET")) {
+				respond(exchange, 405, "Error: Only GET is supported\n");
+				return;
+			}
+			if(!admitted.tryAcquire()) {
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				respond(exchange, 503, "Error: Too many queries, try again later\n");
+				return;
+			}
+			try {
+				running.acquire();
+				try {
+					respond(exchange, 200, answer(parameters(exchange.getRequestURI().getRawQuery())));
+				}
+				finally {
+					running.release();
+				}
+			}
+			finally {
+				admitted.release();
+			}
+		}
+		catch(IllegalArgumentException e) {
+			respond(exchange, 400, "Error: " + e.getMessage() + "\n");
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503, "Error: The server is shutting down\n");
+		}
+		catch(RuntimeException e) {
+			respond(exchange, 500, "Error: " + e + "\n");
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	// Answers one query; every error in the request is an IllegalArgumentException
+	private String answer(Map<String, String> parameters) {
+		String text = parameters.get("q");
+		Query q = text == null ? null : Query.processQuery(text.toLowerCase());
+		if(q == null) {
+			throw new IllegalArgumentException("Missing or malformed query, e.g. q=p(a|b)");
+		}
+		QueryPlan plan = bn.compile(q);
+		String method = parameters.getOrDefault("method", "lw");
+		int numSamples = parseInt(parameters.getOrDefault("samples", String.valueOf(DEFAULT_SAMPLES)), "samples");
+		if(numSamples < 1 || numSamples > MAX_SAMPLES) {
+			throw new IllegalArgumentException("samples must be between 1 and " + MAX_SAMPLES);
+		}
+		String seed = parameters.get("seed");
+		RandomSource random = seed == null ? RandomSource.unseeded() : RandomSource.seeded(parseLong(seed, "seed"));
+
+		WeightedSet d;
+		switch(method) {
+			case "direct":
+				checkEvidence(plan, false, "Direct sampling cannot use evidence, use another method");
+				d = bn.directSample(plan, numSamples, random);
+				break;
+			case "rejection":
+				checkEvidence(plan, true, "Rejection sampling requires evidence");
+				d = bn.rejectionSamplingResult(plan, numSamples, random).getDistribution();
+				break;
+			case "lw":
+				d = bn.likelihoodWeighting(plan, numSamples, random);
+				break;
+			case "gibbs":
+				// The chains run in turn on this thread, which the running limit accounts for
+				GibbsSampler gibbs = new GibbsSampler(bn, GibbsSampler.DEFAULT_BURN_IN, 1, GibbsSampler.DEFAULT_CHAINS, null);
+				d = gibbs.sample(plan, numSamples, random).getDistribution();
+				break;
+			case "ais":
+				d = new ImportanceSampler(bn).estimate(plan, numSamples, random).getDistribution();
+				break;
+			case "ve":
+				d = bn.variableElimination(plan);
+				break;
+			case "jt":
+				d = bn.junctionTree(plan);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown method \"" + method + "\"");
+		}
+		return format(q, plan, d);
+	}
+
+	// Rejects a query whose evidence the method cannot handle, instead of answering another query
+	private static void checkEvidence(QueryPlan plan, boolean required, String message) {
+		if(plan.hasEvidence() != required) {
+			throw new IllegalArgumentException(message);
+		}
+	}
+
+	// One line per outcome, e.g. "p(burglary=true | john_calls, mary_calls) = 0.284"
+	private String format(Query q, QueryPlan plan, WeightedSet d) {
+		CompiledNetwork network = bn.getCompiledNetwork();
+		int[] queryIds = plan.getQueryIds();
+		String evidence = q.evidenceVariables == null ? "" : " | " + q.constructEvidenceString();
+
+		StringBuilder out = new StringBuilder();
+		for(long rank : d.getEventRanks()) {
+			out.append("p(");
+			for(int j = 0; j < queryIds.length; j++) {
+				String state = network.getStateName(queryIds[j], plan.stateOf(rank, j));
+				out.append(j > 0 ? ", " : "").append(network.getName(queryIds[j])).append('=').append(state);
+			}
+			out.append(evidence).append(") = ").append(d.getWeight(rank)).append('\n');
+		}
+		return out.toString();
+	}
+
+	private static Map<String, String> parameters(String rawQuery) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if(rawQuery == null) {
+			return parameters;
+		}
+		for(String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			if(eq > 0) {
+				parameters.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+			}
+		}
+		return parameters;
+	}
+
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static int parseInt(String s, String name) {
+		try {
+			return Integer.parseInt(s);
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be an integer");
+		}
+	}
+
+	private static long parseLong(String s, String name) {
+		try {
+			return Long.parseLong(s);
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException(name + " must be an integer");
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+
+	public static void main(String[] args) {
+		if(args.length < 2 || args.length > 4) {
+			System.out.println("Usage: java InferenceServer <file> <port> [<max running>] [<max waiting>]");
+			System.exit(-1);
+		}
+		String filename = args[0];
+		try {
+			int port = Integer.parseInt(args[1]);
+			int maxRunning = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			int maxWaiting = args.length > 3 ? Integer.parseInt(args[3]) : 4 * maxRunning;
+
+			BayesianNetwork bn = filename.endsWith(".bnb")
+				? new BayesianNetwork(BinaryNetwork.load(Paths.get(filename)))
+				: new BayesianNetwork(Reader.read(filename));
+			InferenceServer server = new InferenceServer(bn, port, maxRunning, maxWaiting);
+			server.start();
+			System.out.println("Serving " + filename + " on port " + server.getPort());
+		}
+		catch(NumberFormatException e) {
+			System.err.println("Error: port, max running and max waiting must be integers");
+			System.exit(-1);
+		}
+		catch(NetworkFormatException e) {
+			System.err.println("Error: File \"" + filename + "\" has incorrect format. " + e.getMessage());
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(-1);
+		}
+		catch(IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package tui;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import bn.BinaryNetwork;
+import bn.CompiledNetwork;
+
+/**
+ * Converts a Bayesian network file in the text format (.bn) to the binary format (.bnb)
+ * read by BinaryNetwork, which loads without any parsing.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public class NetworkConverter {
+
+	public static void main(String[] args) {
+		if(args.length != 2) {
+			System.out.println("Usage: java NetworkConverter <input .bn file> <output .bnb file>");
+			System.exit(-1);
+		}
+		try {
+			CompiledNetwork network = new CompiledNetwork(Reader.read(args[0]));
+			BinaryNetwork.write(network, Paths.get(args[1]));
+			System.out.println("Wrote " + network.size() + " nodes to " + args[1]);
+		}
+		catch(NetworkFormatException e) {
+			System.err.println("Error: File \"" + args[0] + "\" has incorrect format. " + e.getMessage());
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
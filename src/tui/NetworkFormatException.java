@@ -0,0 +1,37 @@
+package tui;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a Bayesian network file (with extension .bn) is not well formed.
+ * The exception records the line on which the problem was found.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public class NetworkFormatException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int lineNumber;
+
+	/**
+	 * Creates an exception for a problem on the given line
+	 *
+	 * @param lineNumber
+	 * 			The line of the file, starting at 1
+	 * @param message
+	 * 			A description of the problem
+	 */
+	public NetworkFormatException(int lineNumber, String message) {
+		super("Line " + lineNumber + ": " + message);
+		this.lineNumber = lineNumber;
+	}
+
+	/**
+	 * Returns the line on which the problem was found
+	 * @return The line number, starting at 1
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
@@ -0,0 +1,165 @@
+package tui;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates random Bayesian networks in the .bn format read by Reader, for scale testing.
+ *
+ * The network has depth layers of width nodes each and is written in topological order.
+ * Every node outside the first layer has between 1 and maxParents parents, drawn mostly
+ * from the layer directly above it and otherwise from any earlier layer. Every CPT entry
+ * is u^rarity for a uniform u, so rarity 1 gives uniform probabilities and larger values
+ * make true outcomes increasingly rare (useful for unlikely evidence).
+ *
+ * The same parameters and seed always produce the same file.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public class NetworkGenerator {
+	private int depth;
+	private int width;
+	private int maxParents;
+	private double rarity;
+	private long seed;
+
+	/**
+	 * Creates a generator
+	 *
+	 * @param depth
+	 * 			The number of layers
+	 * @param width
+	 * 			The number of nodes per layer
+	 * @param maxParents
+	 * 			The largest number of parents of a node
+	 * @param rarity
+	 * 			The exponent applied to every uniformly drawn CPT entry (at least 1 for skew towards false)
+	 * @param seed
+	 * 			The seed of the random number generator
+	 *
+	 * @throws IllegalArgumentException if a size is not positive or maxParents exceeds 63
+	 */
+	public NetworkGenerator(int depth, int width, int maxParents, double rarity, long seed) {
+		if(depth < 1 || width < 1 || maxParents < 1 || maxParents > 63 || rarity <= 0) {
+			throw new IllegalArgumentException("Depth, width, rarity and maxParents (at most 63) must be positive");
+		}
+		this.depth = depth;
+		this.width = width;
+		this.maxParents = maxParents;
+		this.rarity = rarity;
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the number of nodes in the generated network
+	 * @return depth * width
+	 */
+	public int getNumNodes() {
+		return depth * width;
+	}
+
+	/**
+	 * Writes the network to a file
+	 *
+	 * @param filename
+	 * 			The name of the .bn file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String filename) throws IOException {
+		try(Writer out = new BufferedWriter(new FileWriter(filename))) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Writes the network in .bn format
+	 *
+	 * @param out
+	 * 			The destination
+	 * @throws IOException if writing fails
+	 */
+	public void write(Writer out) throws IOException {
+		Random random = new Random(seed);
+		out.write(getNumNodes() + "\n");
+
+		for(int layer = 0; layer < depth; layer++) {
+			for(int i = 0; i < width; i++) {
+				out.write(name(layer, i));
+				if(layer == 0) {
+					out.write("\n");
+					out.write(probability(random) + "\n");
+					continue;
+				}
+
+				int numParents = 1 + random.nextInt(Math.min(maxParents, layer * width));
+				int[] parents = pickParents(random, layer, numParents);
+				out.write("|");
+				for(int p = 0; p < parents.length; p++) {
+					out.write((p > 0 ? "," : "") + name(parents[p] / width, parents[p] % width));
+				}
+				out.write("\n");
+
+				// one row per configuration of the parents, in AssignmentIterator order
+				for(long row = 0; row < (1L << numParents); row++) {
+					out.write(probability(random) + "\n");
+				}
+			}
+		}
+	}
+
+	// Picks distinct parents among the earlier layers, preferring the layer directly above
+	private int[] pickParents(Random random, int layer, int numParents) {
+		int[] parents = new int[numParents];
+		int chosen = 0;
+		while(chosen < numParents) {
+			int parentLayer = random.nextInt(4) > 0 ? layer - 1 : random.nextInt(layer);
+			int candidate = parentLayer * width + random.nextInt(width);
+			boolean duplicate = false;
+			for(int p = 0; p < chosen; p++) {
+				duplicate |= parents[p] == candidate;
+			}
+			if(!duplicate) {
+				parents[chosen++] = candidate;
+			}
+		}
+		return parents;
+	}
+
+	private double probability(Random random) {
+		return Math.pow(random.nextDouble(), rarity);
+	}
+
+	private static String name(int layer, int i) {
+		return "n" + layer + "_" + i;
+	}
+
+
+	public static void main(String[] args) {
+		if(args.length != 6) {
+			System.out.println("Usage: java NetworkGenerator <depth> <width> <maxParents> <rarity> <seed> <file>");
+			System.exit(-1);
+		}
+		try {
+			NetworkGenerator generator = new NetworkGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+				Integer.parseInt(args[2]), Double.parseDouble(args[3]), Long.parseLong(args[4]));
+			generator.write(args[5]);
+			System.out.println("Wrote " + generator.getNumNodes() + " nodes to " + args[5]);
+		}
+		catch(NumberFormatException e) {
+			System.err.println("Error: depth, width, maxParents and seed must be integers and rarity a number");
+			System.exit(-1);
+		}
+		catch(IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(-1);
+		}
+		catch(IOException e) {
+			System.err.println("Error: Could not write file \"" + args[5] + "\".");
+			System.exit(-1);
+		}
+	}
+}
@@ -9,6 +9,10 @@ import java.util.Set;
  * p(X)
  * p(X | y)
  * p(X | !y)
+ * p(X | y=state)
+ * 
+ * The value of every evidence variable is the name of a state; y stands for y=true and
+ * !y for y=false.
  * 
  * @author alchambers
  *
@@ -16,7 +20,7 @@ import java.util.Set;
 public class Query {
 	public Set<String> queryVariables;
 	public Set<String> evidenceVariables;
-	public HashMap<String, Boolean> evidenceValues;
+	public HashMap<String, String> evidenceValues;
 	
 	public Query() {
 		queryVariables = null;
@@ -43,10 +47,12 @@ public class Query {
 	public String constructEvidenceString() {
 		String s = "";
 		for(String e : evidenceVariables) {
-			if(evidenceValues.get(e)) {
+			if(evidenceValues.get(e).equals("true")) {
 				s += e + ", "; 
-			}else {
+			}else if(evidenceValues.get(e).equals("false")) {
 				s += "!" + e + ", ";
+			}else {
+				s += e + "=" + evidenceValues.get(e) + ", ";
 			}
 		}
 		s = s.trim();
@@ -85,15 +91,20 @@ public class Query {
 		// Store the evidence variables
 		if(pipeIndex != -1) {
 			q.evidenceVariables = new HashSet<String>();	
-			q.evidenceValues = new HashMap<String, Boolean>();
+			q.evidenceValues = new HashMap<String, String>();
 			
 			variables = query.substring(pipeIndex+1,closeParenIndex).split(",");
 			for(int i = 0; i < variables.length; i++) {
 				String name = variables[i].trim();
-				boolean value = true;
-				if(name.startsWith("!")) {
+				String value = "true";
+				int equalsIndex = name.indexOf("=");
+				if(equalsIndex != -1) {
+					value = name.substring(equalsIndex+1).trim();
+					name = name.substring(0, equalsIndex).trim();
+				}
+				else if(name.startsWith("!")) {
 					name = name.substring(1);
-					value = false;
+					value = "false";
 				}
 				q.evidenceVariables.add(name);
 				q.evidenceValues.put(name, value);
@@ -1,90 +1,579 @@
 package tui;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Scanner;
 
+import bn.CPT;
+import bn.CategoricalCPT;
+import bn.DenseCPT;
 import bn.Node;
-import util.AssignmentIterator;
-import util.BitVector;
-import util.WeightedSet;
+import bn.NoisyMaxCPT;
+import bn.NoisyOrCPT;
+import bn.TreeCPT;
 
 /**
  * Responsible for reading and parsing Bayesian network files (with extension .bn)
+ *
+ * The first line of a file is the number of nodes. Every node follows in topological
+ * order: a line with its name (or "child|parent1,parent2,...") and then one line per
+ * configuration of its parents, in AssignmentIterator order, holding the probability
+ * that the node is true. Names are case insensitive and blank lines are ignored.
+ *
+ * A node that is not boolean lists its states in parentheses after its name. Every line of
+ * its table then holds the probability of each state, in order and separated by spaces or
+ * commas, and must sum to 1. The configurations of parents with more than two states are
+ * ordered like a mixed radix number, the last parent changing fastest:
+ *
+ * 		weather(sunny,cloudy,rain)|season
+ * 		.6 .3 .1
+ * 		.2 .4 .4
+ * 		umbrella|weather
+ * 		.05
+ * 		.3
+ * 		.9
+ *
+ * Instead of the full table, which needs 2^k lines for k parents and is limited to 2^30
+ * entries, the line after the name of a boolean node with boolean parents may choose
+ * another kind of CPT:
+ *
+ * 		noisy-or	followed by the leak probability and then, for every parent in order,
+ * 					the probability that the parent alone makes the node true (see NoisyOrCPT)
+ * 		tree		followed by a decision tree over the parents in preorder (see TreeCPT): a line
+ * 					with a probability is a leaf, and a line with the name of a parent is a test,
+ * 					followed by its subtree for the parent being true and then for it being false
+ *
+ * For example, a node whose probability only depends on its second parent when the first
+ * is false:
+ *
+ * 		alarm|burglary,earthquake
+ * 		tree
+ * 		burglary
+ * 		.95
+ * 		earthquake
+ * 		.29
+ * 		.001
+ *
+ * Any node may instead have a noisy-max CPT (see NoisyMaxCPT), whose states and parent
+ * states are degrees listed from the highest down to the normal state. The line "noisy-max"
+ * is followed by the leak distribution over the states of the node and then, for every
+ * parent in order and every state of it but the last, the distribution that the parent
+ * alone causes in that state, one distribution per line:
+ *
+ * 		fever(high,mild,none)|flu,infection(severe,light,none)
+ * 		noisy-max
+ * 		.01 .04 .95
+ * 		.4 .5 .1
+ * 		.7 .2 .1
+ * 		.1 .3 .6
+ *
+ * The file is read through a fixed buffer, one line at a time, and the probabilities are
+ * parsed straight from the bytes into the CPT arrays. Any problem with the file is
+ * reported as a NetworkFormatException carrying the offending line number.
+ *
  * @author alchambers
  *
  */
 public class Reader {
+	private static final int BUFFER_SIZE = 1 << 16;
 
-	public static Node[] read(String filename) {
-		Node[] nodes = null;
+	// Every power of ten that a double represents exactly
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
 
-		try {
-			Scanner scanner = new Scanner(new File(filename));
-
-			// The first line in the file is the number of nodes in the Bayesian Network
-			int numNodes = Integer.parseInt(scanner.nextLine());
-			nodes = new Node[numNodes];
-			HashMap<String, Node> mapping = new HashMap<>();
-
-
-			// The remaining lines in the file specify the CPT
-			int nodeId = 0;
-			while(scanner.hasNext()) {
-				String line = scanner.nextLine().toLowerCase();
-				Node node = null;
-
-				// Node has no parents in the BN
-				if(!line.contains("|")) {
-					String prob = scanner.nextLine();
-					WeightedSet cpt = new WeightedSet(1);
-					cpt.addEvent(BitVector.TRUE, Double.parseDouble(prob));
-
-					// TODO: THERE IS AN INCONSISTENCY HERE
-					// THE WEIGHTED SET CONTAINS TWO EVENTS {TRUE, FALSE}
-					// HOWEVER, WE HAVE UPDATED THE PROBABILITY OF TRUE
-					// BUT WE LEFT THE PROBABILITY OF FALSE TO BE THE DEFAULT 0.0
-					// WHAT TO DO?
-					node = new Node(line, cpt);
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+
+	private byte[] line = new byte[256];  // the current line, without its line terminator
+	private int lineLength;
+	private int lineNumber;
+
+	private double[] tree = new double[64];  // the tree CPT being read, in the layout of TreeCPT
+	private int treeSize;
+
+	private Reader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads a Bayesian network from a file
+	 *
+	 * @param filename
+	 * 			The name of the .bn file
+	 * @return The nodes of the network in topological order
+	 *
+	 * @throws NetworkFormatException if the file is not a well formed .bn file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Node[] read(String filename) throws IOException {
+		try(InputStream in = Files.newInputStream(Paths.get(filename))) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Reads a Bayesian network in .bn format from a stream. The stream is not closed.
+	 *
+	 * @param in
+	 * 			The stream to read from
+	 * @return The nodes of the network in topological order
+	 *
+	 * @throws NetworkFormatException if the stream does not hold a well formed .bn file
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static Node[] read(InputStream in) throws IOException {
+		return new Reader(in).readNetwork();
+	}
+
+	private Node[] readNetwork() throws IOException {
+		// The first line in the file is the number of nodes in the Bayesian Network
+		if(!nextLine()) {
+			throw new NetworkFormatException(1, "Expected the number of nodes but the file is empty");
+		}
+		int numNodes = readCount();
+		Node[] nodes = new Node[numNodes];
+		HashMap<String, Node> mapping = new HashMap<>();
+
+		// The remaining lines in the file specify the CPT
+		int nodeId = 0;
+		while(nextLine()) {
+			int headerLine = lineNumber;
+			if(nodeId == numNodes) {
+				throw new NetworkFormatException(headerLine, "Expected " + numNodes + " nodes but found more");
+			}
+			String header = new String(line, 0, lineLength, StandardCharsets.UTF_8).trim().toLowerCase();
+			int bar = header.indexOf('|');
+			String childName = bar < 0 ? header : header.substring(0, bar).trim();
+			String[] states = null; // boolean unless the states are listed
+			int open = childName.indexOf('(');
+			if(open >= 0) {
+				if(!childName.endsWith(")")) {
+					throw new NetworkFormatException(headerLine, "Expected the states of \"" + childName.substring(0, open).trim()
+						+ "\" in parentheses, e.g. weather(sunny,cloudy,rain)");
 				}
-				else {
-					String[] parts = line.split("\\|");
-					if(parts.length != 2) {
-						// throw error
+				states = readStates(childName.substring(open + 1, childName.length() - 1));
+				childName = childName.substring(0, open).trim();
+			}
+			checkName(childName);
+			Node[] parents = new Node[0];
+			if(bar >= 0) {
+				String[] parentNames = header.substring(bar + 1).split(",", -1);
+				parents = new Node[parentNames.length];
+				for(int i = 0; i < parentNames.length; i++) {
+					String parentName = parentNames[i].trim();
+					checkName(parentName);
+					parents[i] = mapping.get(parentName);
+					if(parents[i] == null) {
+						throw new NetworkFormatException(headerLine, "Unknown parent \"" + parentName + "\" (parents must be listed before their children)");
 					}
-					String childName = parts[0];
-					String[] parentNames = parts[1].split(",");
+				}
+			}
+			CPT cpt = readCPT(childName, states == null ? 0 : states.length, parents, headerLine);
+			Node node = states == null ? new Node(childName, parents, cpt) : new Node(childName, states, parents, cpt);
 
-					Node[] parents = new Node[parentNames.length];
-					for(int i = 0; i < parentNames.length; i++) {
-						parents[i] = mapping.get(parentNames[i]);
+			if(mapping.putIfAbsent(node.getName(), node) != null) {
+				throw new NetworkFormatException(headerLine, "Duplicate node \"" + node.getName() + "\"");
+			}
+			nodes[nodeId] = node;
+			nodeId++;
+		}
+
+		if(nodeId < numNodes) {
+			throw new NetworkFormatException(lineNumber, "Expected " + numNodes + " nodes but found " + nodeId);
+		}
+		return nodes;
+	}
+
+	// Reads the CPT that follows the line with the node's name. A boolean node has no state
+	// list (numStates is 0) and one probability per row.
+	private CPT readCPT(String name, int numStates, Node[] parents, int headerLine) throws IOException {
+		if(!nextLine()) {
+			throw new NetworkFormatException(lineNumber, "Expected a probability but reached the end of the file");
+		}
+		int[] parentCardinalities = new int[parents.length];
+		boolean booleanParents = true;
+		for(int p = 0; p < parents.length; p++) {
+			parentCardinalities[p] = parents[p].getNumStates();
+			booleanParents &= parentCardinalities[p] == 2;
+		}
+		try {
+			if(!startsLikeNumber()) {
+				String kind = currentLine().toLowerCase();
+				if(kind.equals("noisy-max")) {
+					return readNoisyMax(Math.max(numStates, 2), parentCardinalities);
+				}
+				if(!kind.equals("noisy-or") && !kind.equals("tree")) {
+					throw new NetworkFormatException(lineNumber, "Expected a probability, \"noisy-or\", \"noisy-max\" or \"tree\" but found \""
+						+ kind + "\"");
+				}
+				if(numStates > 2 || !booleanParents) {
+					throw new NetworkFormatException(lineNumber, "A " + kind + " CPT needs a boolean node with boolean parents"
+						+ (kind.equals("noisy-or") ? ", use noisy-max for multi-valued variables" : ""));
+				}
+				if(kind.equals("noisy-or")) {
+					double leak = readProbability();
+					double[] causes = new double[parents.length];
+					for(int p = 0; p < causes.length; p++) {
+						causes[p] = readProbability();
 					}
+					return new NoisyOrCPT(leak, causes);
+				}
+				treeSize = 0;
+				readTree(name, parents, new boolean[parents.length]);
+				return new TreeCPT(parents.length, Arrays.copyOf(tree, treeSize));
+			}
+
+			long numRows = 1;
+			for(int c : parentCardinalities) {
+				numRows = Math.min(numRows * c, 1L << 31);
+			}
+			int perRow = Math.max(numStates, 1);
+			if(numRows * perRow > 1 << CPT.MAX_DENSE_PARENTS) {
+				throw new NetworkFormatException(headerLine, "Node \"" + name + "\" has more than " + (1 << CPT.MAX_DENSE_PARENTS)
+					+ " table entries, which needs a noisy-or or tree CPT");
+			}
+			// One line per configuration of the parents, already in row order
+			double[] table = new double[(int)numRows * perRow];
+			for(int row = 0; row < numRows; row++) {
+				if(row > 0 && !nextLine()) {
+					throw new NetworkFormatException(lineNumber, "Expected a probability but reached the end of the file");
+				}
+				if(numStates == 0) {
+					table[row] = probability();
+				}
+				else {
+					readRow(table, row * perRow, perRow);
+				}
+			}
+
+			if(numStates == 0) {
+				return new DenseCPT(parentCardinalities, table);
+			}
+			if(numStates == 2) {
+				// Stored like a boolean node, by the probability of the first state
+				double[] first = new double[(int)numRows];
+				for(int row = 0; row < first.length; row++) {
+					first[row] = table[2 * row];
+				}
+				return new DenseCPT(parentCardinalities, first);
+			}
+			return new CategoricalCPT(parentCardinalities, numStates, table);
+		}
+		catch(IllegalArgumentException e) {
+			throw new NetworkFormatException(lineNumber, e.getMessage());
+		}
+	}
+
+	// Reads the leak distribution and the distribution of every abnormal parent state of a
+	// noisy-max CPT, one line each
+	private CPT readNoisyMax(int numStates, int[] parentCardinalities) throws IOException {
+		int numCauses = 0;
+		for(int c : parentCardinalities) {
+			numCauses += c - 1;
+		}
+		double[][] distributions = new double[1 + numCauses][numStates];
+		for(double[] distribution : distributions) {
+			if(!nextLine()) {
+				throw new NetworkFormatException(lineNumber, "Expected " + numStates + " probabilities but reached the end of the file");
+			}
+			readRow(distribution, 0, numStates);
+		}
+		return new NoisyMaxCPT(parentCardinalities, numStates, distributions[0],
+			Arrays.copyOfRange(distributions, 1, distributions.length));
+	}
+
+	// Parses the current line as the probabilities of count states, separated by spaces or
+	// commas, that sum to 1
+	private void readRow(double[] table, int offset, int count) throws NetworkFormatException {
+		int found = 0;
+		double sum = 0;
+		int i = 0;
+		while(true) {
+			while(i < lineLength && isSeparator(line[i])) {
+				i++;
+			}
+			if(i == lineLength) {
+				break;
+			}
+			int start = i;
+			while(i < lineLength && !isSeparator(line[i])) {
+				i++;
+			}
+			if(found == count) {
+				throw new NetworkFormatException(lineNumber, "Expected " + count + " probabilities but found more");
+			}
+			table[offset + found] = probability(start, i);
+			sum += table[offset + found];
+			found++;
+		}
+		if(found < count) {
+			throw new NetworkFormatException(lineNumber, "Expected " + count + " probabilities but found " + found);
+		}
+		if(Math.abs(sum - 1) > CategoricalCPT.TOLERANCE) {
+			throw new NetworkFormatException(lineNumber, "The probabilities sum to " + sum + ", not 1");
+		}
+	}
+
+	// Splits the state list of a node, which needs at least two distinct states
+	private String[] readStates(String list) throws NetworkFormatException {
+		String[] states = list.split(",", -1);
+		for(int s = 0; s < states.length; s++) {
+			states[s] = states[s].trim();
+			if(states[s].isEmpty() || states[s].matches(".*[|()=!\\s].*")) {
+				throw new NetworkFormatException(lineNumber, "Invalid state name \"" + states[s] + "\"");
+			}
+			for(int t = 0; t < s; t++) {
+				if(states[s].equals(states[t])) {
+					throw new NetworkFormatException(lineNumber, "State \"" + states[s] + "\" is listed twice");
+				}
+			}
+		}
+		if(states.length < 2) {
+			throw new NetworkFormatException(lineNumber, "A node needs at least 2 states");
+		}
+		return states;
+	}
 
-					WeightedSet cpt = new WeightedSet(parents.length);
-					Iterator<BitVector> itr = new AssignmentIterator(parents.length);
-					while(itr.hasNext()) {
-						BitVector assignment = itr.next();
-						double probTrue = Double.parseDouble(scanner.nextLine());
-						cpt.addEvent(assignment, probTrue);
+	// Reads a subtree of a tree CPT in preorder. Parents that are already tested on the path
+	// to the subtree are marked as used.
+	private void readTree(String name, Node[] parents, boolean[] used) throws IOException {
+		if(!nextLine()) {
+			throw new NetworkFormatException(lineNumber, "Expected a probability or a parent but reached the end of the file");
+		}
+		int node = treeSize;
+		if(treeSize + 2 > tree.length) {
+			tree = Arrays.copyOf(tree, 2 * tree.length);
+		}
+		treeSize += 2;
+		if(startsLikeNumber()) {
+			tree[node] = TreeCPT.LEAF;
+			tree[node + 1] = probability();
+			return;
+		}
+
+		String parentName = currentLine().toLowerCase();
+		int p = 0;
+		while(p < parents.length && !parents[p].getName().equals(parentName)) {
+			p++;
+		}
+		if(p == parents.length) {
+			throw new NetworkFormatException(lineNumber, "\"" + parentName + "\" is not a parent of \"" + name + "\"");
+		}
+		if(used[p]) {
+			throw new NetworkFormatException(lineNumber, "Parent \"" + parentName + "\" is tested twice on one path");
+		}
+		used[p] = true;
+		tree[node] = p;
+		readTree(name, parents, used);
+		tree[node + 1] = treeSize - node - 2;
+		readTree(name, parents, used);
+		used[p] = false;
+	}
+
+	// Moves to the next line that is not blank, returning false at the end of the input
+	private boolean nextLine() throws IOException {
+		do {
+			if(!nextRawLine()) {
+				return false;
+			}
+		} while(isBlank());
+		return true;
+	}
+
+	// Copies the next line out of the buffer, refilling it as needed
+	private boolean nextRawLine() throws IOException {
+		lineLength = 0;
+		while(true) {
+			if(position == limit) {
+				limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+				position = 0;
+				if(limit == 0) {
+					if(lineLength == 0) {
+						return false;
 					}
-					node = new Node(childName, parents, cpt); // has parents
+					break;
 				}
-				nodes[nodeId] = node;
-				mapping.put(node.getName(), node);
-				nodeId++;
 			}
-			scanner.close();
+			int start = position;
+			while(position < limit && buffer[position] != '\n') {
+				position++;
+			}
+			append(start, position);
+			if(position < limit) {
+				position++; // skip the '\n'
+				break;
+			}
 		}
-		catch (FileNotFoundException e) {
-			System.err.println("Error: Could not find file \"" +filename+ "\".");
-			System.exit(-1);
+		lineNumber++;
+		if(lineLength > 0 && line[lineLength - 1] == '\r') {
+			lineLength--;
+		}
+		return true;
+	}
+
+	private void append(int start, int end) {
+		int n = end - start;
+		if(lineLength + n > line.length) {
+			byte[] grown = new byte[Math.max(2 * line.length, lineLength + n)];
+			System.arraycopy(line, 0, grown, 0, lineLength);
+			line = grown;
+		}
+		System.arraycopy(buffer, start, line, lineLength, n);
+		lineLength += n;
+	}
+
+	private boolean isBlank() {
+		for(int i = 0; i < lineLength; i++) {
+			if(!isSpace(line[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int readCount() throws NetworkFormatException {
+		String text = new String(line, 0, lineLength, StandardCharsets.UTF_8).trim();
+		try {
+			int count = Integer.parseInt(text);
+			if(count >= 0) {
+				return count;
+			}
 		}
 		catch(NumberFormatException e) {
-			System.err.println("Error: File has incorrect format (double/integer expected)");
-			System.exit(-1);
+			// reported below
 		}
-		return nodes;
+		throw new NetworkFormatException(lineNumber, "Expected the number of nodes but found \"" + text + "\"");
+	}
+
+	private void checkName(String name) throws NetworkFormatException {
+		if(name.isEmpty() || name.indexOf('|') >= 0) {
+			throw new NetworkFormatException(lineNumber, "Invalid node name \"" + name + "\"");
+		}
+	}
+
+	// Reads the next line as a probability between 0 and 1
+	private double readProbability() throws IOException {
+		if(!nextLine()) {
+			throw new NetworkFormatException(lineNumber, "Expected a probability but reached the end of the file");
+		}
+		return probability();
+	}
+
+	// Parses the current line as a probability between 0 and 1
+	private double probability() throws NetworkFormatException {
+		return probability(0, lineLength);
+	}
+
+	// Parses part of the current line as a probability between 0 and 1
+	private double probability(int start, int end) throws NetworkFormatException {
+		double p = parseNumber(start, end);
+		if(!(p >= 0.0 && p <= 1.0)) {
+			throw new NetworkFormatException(lineNumber, "Probability " + p + " is not between 0 and 1");
+		}
+		return p;
+	}
+
+	// Parses part of the current line as a decimal number such as "1", ".95", "0.5" or "1.0E-5".
+	// Whenever the digits and the exponent are small enough for the result to be exact
+	// the number is computed directly; anything else goes through Double.parseDouble.
+	private double parseNumber(int start, int end) throws NetworkFormatException {
+		while(isSpace(line[start])) {
+			start++;
+		}
+		while(isSpace(line[end - 1])) {
+			end--;
+		}
+
+		int i = start;
+		boolean negative = line[i] == '-';
+		if(line[i] == '-' || line[i] == '+') {
+			i++;
+		}
+
+		long mantissa = 0;
+		int numDigits = 0;
+		int exponent = 0;
+		boolean exact = true;
+		for(; i < end && isDigit(line[i]); i++) {
+			exact &= accumulate(mantissa, line[i]);
+			mantissa = mantissa * 10 + (line[i] - '0');
+			numDigits++;
+		}
+		if(i < end && line[i] == '.') {
+			for(i++; i < end && isDigit(line[i]); i++) {
+				exact &= accumulate(mantissa, line[i]);
+				mantissa = mantissa * 10 + (line[i] - '0');
+				exponent--;
+				numDigits++;
+			}
+		}
+		if(numDigits > 0 && i < end && (line[i] == 'e' || line[i] == 'E')) {
+			i++;
+			boolean negativeExponent = i < end && line[i] == '-';
+			if(i < end && (line[i] == '-' || line[i] == '+')) {
+				i++;
+			}
+			int e = 0;
+			int expStart = i;
+			for(; i < end && isDigit(line[i]); i++) {
+				e = Math.min(e * 10 + (line[i] - '0'), 10000);
+			}
+			if(i == expStart) {
+				throw notANumber(start, end);
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if(numDigits == 0 || i != end) {
+			throw notANumber(start, end);
+		}
+
+		if(exact && Math.abs(exponent) < POWERS_OF_TEN.length) {
+			double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(new String(line, start, end - start, StandardCharsets.ISO_8859_1));
+	}
+
+	// Whether appending the digit still leaves a mantissa that a double holds exactly
+	private static boolean accumulate(long mantissa, byte digit) {
+		return mantissa <= ((1L << 53) - (digit - '0')) / 10;
+	}
+
+	private NetworkFormatException notANumber(int start, int end) {
+		String text = new String(line, start, end - start, StandardCharsets.UTF_8);
+		return new NetworkFormatException(lineNumber, "Expected a probability but found \"" + text + "\"");
+	}
+
+	// Whether the current line starts like a number rather than a word
+	private boolean startsLikeNumber() {
+		int i = 0;
+		while(isSpace(line[i])) {
+			i++;
+		}
+		return isDigit(line[i]) || line[i] == '.' || line[i] == '-' || line[i] == '+';
+	}
+
+	private String currentLine() {
+		return new String(line, 0, lineLength, StandardCharsets.UTF_8).trim();
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isSeparator(byte b) {
+		return isSpace(b) || b == ',';
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
 	}
 }
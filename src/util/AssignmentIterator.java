@@ -1,6 +1,7 @@
 package util;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import util.BitVector;
 
@@ -17,14 +18,19 @@ import util.BitVector;
  *  001
  *  000
  *
+ * The iterator supports up to 63 variables. When created with reuse enabled, next() refills
+ * and returns the same BitVector instead of allocating a new one, and nextRank() returns the
+ * rank of the next configuration without touching a BitVector at all.
+ *
  * @author alchambers
  * @version spring2019
  *
  */
 public class AssignmentIterator implements Iterator<BitVector>{
 	private int size;
-	private int maxNoSets;
-	private int setCounter;
+	private long maxNoSets;
+	private long setCounter;
+	private BitVector shared; //the vector refilled by next(), or null if every call allocates
 
 	/**
 	 * Creates a new iterator
@@ -32,40 +38,52 @@ public class AssignmentIterator implements Iterator<BitVector>{
 	 * 			The iterator will iterate over all 2^n settings of n boolean random variables
 	 */
 	public AssignmentIterator(int n) {
-		if(n >= 10) {
-			System.out.println("Supports sizes less than or equal to 10");
-			throw new IllegalArgumentException("Input parameter size must be <= 10");
+		this(n, false);
+	}
+
+	/**
+	 * Creates a new iterator
+	 * @param n
+	 * 			The iterator will iterate over all 2^n settings of n boolean random variables
+	 * @param reuse
+	 * 			If true, next() returns the same BitVector on every call
+	 *
+	 * @throws IllegalArgumentException if n is negative or greater than 63
+	 */
+	public AssignmentIterator(int n, boolean reuse) {
+		if(n < 0 || n > 63) {
+			throw new IllegalArgumentException("Input parameter size must be between 0 and 63");
 		}
 		this.size = n;
-		this.maxNoSets = (int)Math.pow(2,  size);
+		this.maxNoSets = 1L << size; //2^63 wraps negative, hasNext compares unsigned
 		this.setCounter = 0;
+		this.shared = reuse ? new BitVector(n) : null;
 	}
 
 
 	@Override
 	public boolean hasNext() {
-		return setCounter < maxNoSets;
+		return Long.compareUnsigned(setCounter, maxNoSets) < 0;
 	}
 
 	@Override
 	public BitVector next() {
-		BitVector assignment = new BitVector(size);
-
-		// Iterate over each bit of the setCounter integer variable
-		for(int bit = 0; bit < size; bit++) {
-			// We are bit shifting the number 1 (which is 000...0001) so that the 1 bit
-			// moves to the correct position. We then perform an AND to pull out the
-			// current bit
+		if(shared != null) {
+			shared.setRank(nextRank());
+			return shared;
+		}
+		return BitVector.fromRank(size, nextRank());
+	}
 
-			if((setCounter & (1 << bit)) == 0){
-				assignment.set(size-bit-1, true);
-			}
-			else {
-				assignment.set(size-bit-1, false);
-			}
+	/**
+	 * Advances the iterator without building a BitVector
+	 * @return The rank of the next configuration
+	 */
+	public long nextRank() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
 		}
-		setCounter++;
-		return assignment;
+		return setCounter++;
 	}
 
 	public static void main(String[] args) {
@@ -4,6 +4,14 @@ import java.util.Arrays;
 
 /**
  * Represents a configuration of n boolean random variables
+ *
+ * The bits are packed 64 to a long word. A word bit is set when the corresponding
+ * position is false, so a freshly created vector (all true) needs no initialization.
+ *
+ * A configuration of n <= 63 variables can also be identified by its rank, which is its
+ * position in the order produced by AssignmentIterator: bit (n-1-p) of the rank is set
+ * when position p is false.
+ *
  * @author alchambers
  * @version spring2019
  *
@@ -11,7 +19,8 @@ import java.util.Arrays;
 public class BitVector {
 	public static final BitVector TRUE = new BitVector(1);
 
-	private boolean[] bitString;
+	private final int length;
+	private final long[] falseBits;
 
 	/**
 	 * Constructs a vector of n bits each initialized to true
@@ -19,10 +28,23 @@ public class BitVector {
 	 * 		The length of the bit vector
 	 */
 	public BitVector(int n) {
-		this.bitString = new boolean[n];
-		for(int i = 0; i < bitString.length; i++) {
-			bitString[i] = true;
-		}
+		this.length = n;
+		this.falseBits = new long[(n + 63) >>> 6];
+	}
+
+	/**
+	 * Constructs the vector of n bits with the given rank
+	 *
+	 * @param n
+	 * 		The length of the bit vector, at most 63
+	 * @param rank
+	 * 		The position of the configuration in AssignmentIterator order
+	 * @return A new bit vector
+	 */
+	public static BitVector fromRank(int n, long rank) {
+		BitVector bv = new BitVector(n);
+		bv.setRank(rank);
+		return bv;
 	}
 
 
@@ -40,8 +62,11 @@ public class BitVector {
 		if(!isValid(position)) {
 			throw new IndexOutOfBoundsException();
 		}
-		if(isValid(position)) {
-			bitString[position] = value;
+		if(value) {
+			falseBits[position >>> 6] &= ~(1L << position);
+		}
+		else {
+			falseBits[position >>> 6] |= 1L << position;
 		}
 	}
 
@@ -58,7 +83,49 @@ public class BitVector {
 		if(!isValid(position)) {
 			throw new IndexOutOfBoundsException();
 		}
-		return bitString[position];
+		return (falseBits[position >>> 6] & (1L << position)) == 0;
+	}
+
+	/**
+	 * Sets every bit back to true so the vector can be reused
+	 */
+	public void reset() {
+		Arrays.fill(falseBits, 0L);
+	}
+
+	/**
+	 * Returns the rank of the configuration
+	 *
+	 * @return The position of this configuration in AssignmentIterator order
+	 *
+	 * @throws IllegalStateException if the vector is longer than 63 bits
+	 */
+	public long toRank() {
+		checkRankable();
+		long rank = 0;
+		for(int p = 0; p < length; p++) {
+			rank = (rank << 1) | ((falseBits[0] >>> p) & 1L);
+		}
+		return rank;
+	}
+
+	/**
+	 * Overwrites every bit with the configuration of the given rank
+	 *
+	 * @param rank
+	 * 				The position of a configuration in AssignmentIterator order
+	 *
+	 * @throws IllegalStateException if the vector is longer than 63 bits
+	 */
+	public void setRank(long rank) {
+		checkRankable();
+		long bits = 0;
+		for(int p = 0; p < length; p++) {
+			bits |= ((rank >>> (length - 1 - p)) & 1L) << p;
+		}
+		if(falseBits.length > 0) {
+			falseBits[0] = bits;
+		}
 	}
 
 	/**
@@ -67,7 +134,7 @@ public class BitVector {
 	 * @return The number of bits in the bit set
 	 */
 	public int length() {
-		return bitString.length;
+		return length;
 	}
 
 
@@ -77,11 +144,11 @@ public class BitVector {
 	 */
 	@Override
 	public String toString() {
-		String s = "";
-		for(int i = 0; i < bitString.length; i++) {
-			s += bitString[i] ? "1" : "0";
+		char[] s = new char[length];
+		for(int i = 0; i < length; i++) {
+			s[i] = get(i) ? '1' : '0';
 		}
-		return s;
+		return new String(s);
 	}
 
 
@@ -91,10 +158,11 @@ public class BitVector {
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + Arrays.hashCode(bitString);
-		return result;
+		long h = length;
+		for(long word : falseBits) {
+			h = h * 0x9E3779B97F4A7C15L + word;
+		}
+		return (int)(h ^ (h >>> 32));
 	}
 
 	/**
@@ -110,12 +178,18 @@ public class BitVector {
 		if (getClass() != obj.getClass())
 			return false;
 		BitVector other = (BitVector) obj;
-		if (!Arrays.equals(bitString, other.bitString))
+		if (length != other.length || !Arrays.equals(falseBits, other.falseBits))
 			return false;
 		return true;
 	}
 
 	private boolean isValid(int position) {
-		return 0 <= position && position < bitString.length;
+		return 0 <= position && position < length;
+	}
+
+	private void checkRankable() {
+		if(length > 63) {
+			throw new IllegalStateException("Only vectors of at most 63 bits have a rank");
+		}
 	}
 }
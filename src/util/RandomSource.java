@@ -0,0 +1,62 @@
+package util;
+
+/**
+ * A source of random numbers for the samplers.
+ *
+ * A source is not thread safe. To sample on several threads, split one independent
+ * stream off a root source per thread; a seeded root then reproduces every stream.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public interface RandomSource {
+
+	/**
+	 * Returns the next 64 uniformly distributed random bits
+	 * @return A random long
+	 */
+	long nextLong();
+
+	/**
+	 * Returns a uniformly distributed double in [0, 1), built from the top 53 bits of nextLong()
+	 * @return A random double
+	 */
+	default double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Returns a uniformly distributed boolean
+	 * @return A random boolean
+	 */
+	default boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	/**
+	 * Returns a new source whose stream is statistically independent of this one. Advances
+	 * this source, so splitting a seeded source repeatedly gives a reproducible sequence of streams.
+	 *
+	 * @return A new random source
+	 */
+	RandomSource split();
+
+	/**
+	 * Creates the default source with the given seed
+	 *
+	 * @param seed
+	 * 			The seed
+	 * @return A source that always produces the same stream for the same seed
+	 */
+	static RandomSource seeded(long seed) {
+		return new SplittableRandomSource(seed);
+	}
+
+	/**
+	 * Creates the default source with an unpredictable seed
+	 * @return A new random source
+	 */
+	static RandomSource unseeded() {
+		return new SplittableRandomSource();
+	}
+}
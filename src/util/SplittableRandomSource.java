@@ -0,0 +1,49 @@
+package util;
+
+import java.util.SplittableRandom;
+
+/**
+ * A random source backed by java.util.SplittableRandom (SplitMix64). This is the default
+ * source of the samplers: it is fast, and split() derives a new stream in constant time.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public class SplittableRandomSource implements RandomSource {
+	private final SplittableRandom random;
+
+	/**
+	 * Creates a source with an unpredictable seed
+	 */
+	public SplittableRandomSource() {
+		this(new SplittableRandom());
+	}
+
+	/**
+	 * Creates a source with the given seed
+	 * @param seed
+	 * 		The seed
+	 */
+	public SplittableRandomSource(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private SplittableRandomSource(SplittableRandom random) {
+		this.random = random;
+	}
+
+	@Override
+	public long nextLong() {
+		return random.nextLong();
+	}
+
+	@Override
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	@Override
+	public RandomSource split() {
+		return new SplittableRandomSource(random.split());
+	}
+}
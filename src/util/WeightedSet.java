@@ -1,10 +1,10 @@
 package util;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.HashMap;
 
 /**
-* This is a general purpose class that maps configurations (of n boolean random variables) to a numerical value.
+* This is a general purpose class that maps configurations (of n discrete random variables) to a numerical value.
 * The meaning of the numerical value depends upon the usage. The numerical value could be:
 *
 * - A tally (e.g. for direct sampling or rejection sampling)
@@ -18,17 +18,30 @@ import java.util.HashMap;
 *
 * and each assignment would be associated with a probability.
 *
+* The weights are kept in a dense array indexed by the rank of each configuration (see
+* BitVector), so the methods taking an index avoid building a BitVector altogether. When the
+* variables have more than two states, the rank is the mixed radix number whose digits are
+* their states, the first variable being the most significant; only the methods taking a
+* rank apply to such a set.
+*
+* A weighted set with more than 2^DENSE_LIMIT configurations (or one created with sparse())
+* is sparse instead: it only stores the configurations that were actually given a weight, in
+* an open-addressing table keyed by rank. Every other configuration has weight 0, and
+* getEvents() returns only the stored configurations.
 *
 * @author Sarah Walling-Bell
 * @version March 29, 2019
 *
 */
 public class WeightedSet {
-	private HashMap<BitVector, Double> mapping;
-	private int size;
+	/** The largest number of boolean variables for which new WeightedSet(n) stores every configuration */
+	public static final int DENSE_LIMIT = 16;
 
-	//create a hashmap that maps TT or TF etc (Bit Vector), to a double. This will be
-	//populated by the input bn file at runtime.
+	private double[] weights; //dense: the weight of every configuration by rank; sparse: the weight in every slot
+	private long[] keys; //sparse only: rank + 1 of the configuration in every slot, 0 if the slot is empty
+	private int count; //sparse only: the number of used slots
+	private int[] cardinalities; //the number of states of every variable
+	private boolean binary; //whether every variable has two states
 
 	/**
 	* Creates a new weighted set that contains all possible configurations of n boolean random variables
@@ -39,13 +52,108 @@ public class WeightedSet {
 	* 			The weighted set contains all possible configurations
 	*/
 	public WeightedSet(int n) {
-		mapping = new HashMap<BitVector, Double>();
-		size = n;
-		Iterator<BitVector> ai = new AssignmentIterator(n);
-		while(ai.hasNext()){
-			BitVector config = ai.next();
-			mapping.put(config, 0.0);
+		this(n, n > DENSE_LIMIT ? null : new double[1 << n]);
+	}
+
+	/**
+	* Creates a weighted set over n boolean random variables backed by the given array.
+	* The array is used directly, not copied.
+	*
+	* @param n
+	* 			The number of boolean random variables
+	* @param weights
+	* 			The weight of every configuration, indexed by rank (see BitVector)
+	*
+	* @throws IllegalArgumentException if the array does not have 2^n entries
+	*/
+	public WeightedSet(int n, double[] weights) {
+		if(n < 0 || n > 63) {
+			throw new IllegalArgumentException("A weighted set supports between 0 and 63 variables");
+		}
+		int[] cardinalities = new int[n];
+		Arrays.fill(cardinalities, 2);
+		init(cardinalities, weights);
+	}
+
+	/**
+	* Creates a new weighted set that contains all possible configurations of discrete random
+	* variables with the given numbers of states. It is dense if it has at most 2^DENSE_LIMIT
+	* configurations and sparse otherwise.
+	*
+	* @param cardinalities
+	* 			The number of states of every variable, at least 1
+	*
+	* @throws IllegalArgumentException if a cardinality is not positive or there are more than
+	* 			2^63 configurations
+	*/
+	public WeightedSet(int[] cardinalities) {
+		long maxRank = maxRank(cardinalities);
+		init(cardinalities.clone(), maxRank < 1 << DENSE_LIMIT ? new double[(int)maxRank + 1] : null);
+	}
+
+	//Sets up the set over the given variables, sparse if weights is null
+	private void init(int[] cardinalities, double[] weights) {
+		long maxRank = maxRank(cardinalities);
+		this.cardinalities = cardinalities;
+		this.binary = true;
+		for(int c : cardinalities) {
+			binary &= c == 2;
+		}
+		if(weights == null) {
+			this.keys = new long[16];
+			this.weights = new double[16];
+		}
+		else if(maxRank >= 1 << 30 || weights.length != maxRank + 1) {
+			throw new IllegalArgumentException("A dense weighted set over " + cardinalities.length + " variables needs "
+				+ (maxRank + 1) + " weights");
+		}
+		else {
+			this.weights = weights;
+		}
+	}
+
+	//The largest rank of a configuration of variables with the given numbers of states
+	private static long maxRank(int[] cardinalities) {
+		long maxRank = 0;
+		try {
+			for(int c : cardinalities) {
+				if(c < 1) {
+					throw new IllegalArgumentException("Every variable needs at least one state");
+				}
+				maxRank = Math.addExact(Math.multiplyExact(maxRank, c), c - 1);
+			}
+		}
+		catch(ArithmeticException e) {
+			throw new IllegalArgumentException("A weighted set supports at most 2^63 configurations");
 		}
+		return maxRank;
+	}
+
+	/**
+	* Creates an empty sparse weighted set over n boolean random variables
+	*
+	* @param n
+	* 			The number of boolean random variables, at most 63
+	* @return A weighted set that only stores configurations once they are given a weight
+	*/
+	public static WeightedSet sparse(int n) {
+		return new WeightedSet(n, null);
+	}
+
+	/**
+	* Returns the number of states of every variable
+	* @return The cardinalities of the variables, 2 for every boolean variable
+	*/
+	public int[] getCardinalities() {
+		return cardinalities.clone();
+	}
+
+	/**
+	* Returns whether only the configurations with a weight are stored
+	* @return True if the set is sparse, false if it holds every configuration
+	*/
+	public boolean isSparse() {
+		return keys != null;
 	}
 
 	/**
@@ -56,7 +164,14 @@ public class WeightedSet {
 	* 				A numerical weight
 	*/
 	public void addEvent(BitVector event, double weight) {
-		mapping.put(event, weight);
+		long index = indexOf(event);
+		if(keys == null) {
+			weights[(int)index] = weight;
+		}
+		else {
+			int s = slot(index);
+			weights[s] = weight;
+		}
 	}
 
 	/**
@@ -68,9 +183,54 @@ public class WeightedSet {
 	* 				An amount by which to increase the weight
 	*/
 	public void increment(BitVector event, double amount) {
-		double currWeight = mapping.get(event);
-		double newWeight = currWeight + amount;
-		mapping.replace(event, newWeight);
+		increment(indexOf(event), amount);
+	}
+
+	/**
+	* Increments the weight of the event with the given rank by the specified amount
+	*
+	* @param index
+	* 				The rank of an event
+	* @param amount
+	* 				An amount by which to increase the weight
+	*/
+	public void increment(long index, double amount) {
+		if(keys == null) {
+			weights[(int)index] += amount;
+		}
+		else {
+			int s = slot(index); //may grow the table, so look it up before indexing weights
+			weights[s] += amount;
+		}
+	}
+
+	/**
+	* Adds the weight of every event in another weighted set to this set. Used to combine
+	* tallies that were accumulated separately, e.g. by different threads.
+	*
+	* @param other
+	* 				A weighted set over the same random variables
+	*/
+	public void merge(WeightedSet other) {
+		if(!Arrays.equals(other.cardinalities, cardinalities)) {
+			throw new IllegalArgumentException("Cannot merge weighted sets of different sizes");
+		}
+		if(keys == null && other.keys == null) {
+			for(int i = 0; i < weights.length; i++){
+				weights[i] += other.weights[i];
+			}
+			return;
+		}
+		for(int i = 0; i < other.weights.length; i++){
+			if(other.keys == null) {
+				if(other.weights[i] != 0) {
+					increment(i, other.weights[i]);
+				}
+			}
+			else if(other.keys[i] != 0) {
+				increment(other.keys[i] - 1, other.weights[i]);
+			}
+		}
 	}
 
 	/**
@@ -81,15 +241,74 @@ public class WeightedSet {
 	* @return The weight of the specified event
 	*/
 	public double getWeight(BitVector event) {
-		return mapping.get(event);
+		return getWeight(indexOf(event));
+	}
+
+	/**
+	* Returns the weight of the event with the given rank
+	*
+	* @param index
+	* 				The rank of an event
+	* @return The weight of the specified event (0 if a sparse set has not stored it)
+	*/
+	public double getWeight(long index) {
+		if(keys == null) {
+			return weights[(int)index];
+		}
+		int s = find(index);
+		return keys[s] == 0 ? 0.0 : weights[s];
 	}
 
 	/**
 	* Returns the set of all events
-	* @return The set of all events
+	* @return The set of all events, in rank order (or the stored events if the set is sparse)
+	*
+	* @throws IllegalStateException if a variable is not boolean; use getEventRanks() instead
 	*/
 	public Set<BitVector> getEvents() {
-		return mapping.keySet();
+		if(!binary) {
+			throw new IllegalStateException("The events of variables with more than two states are only available as ranks");
+		}
+		int size = cardinalities.length;
+		Set<BitVector> events = new LinkedHashSet<BitVector>();
+		for(int i = 0; i < weights.length; i++){
+			if(keys == null) {
+				events.add(BitVector.fromRank(size, i));
+			}
+			else if(keys[i] != 0) {
+				events.add(BitVector.fromRank(size, keys[i] - 1));
+			}
+		}
+		return events;
+	}
+
+	/**
+	* Returns the ranks of all events, in the same order as getEvents()
+	* @return The rank of every event (every configuration unless the set is sparse)
+	*/
+	public long[] getEventRanks() {
+		long[] ranks = new long[getSize()];
+		for(int i = 0, r = 0; i < weights.length; i++){
+			if(keys == null) {
+				ranks[r++] = i;
+			}
+			else if(keys[i] != 0) {
+				ranks[r++] = keys[i] - 1;
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	* Returns the sum of all weights
+	* @return The total weight of the set
+	*/
+	public double getTotalWeight() {
+		double total = 0.0;
+		for(int i = 0; i < weights.length; i++){
+			total += weights[i];
+		}
+		return total;
 	}
 
 	/**
@@ -97,17 +316,12 @@ public class WeightedSet {
 	*/
 	public void normalizeWeights() {
 
-		//get the sum of all of the weights in the CPT and save as the normalization constant
-		double normConstant = 0.0;
-		for(BitVector b : mapping.keySet()){
-			normConstant += mapping.get(b);
-		}
+		//get the sum of all of the weights and save as the normalization constant
+		//(the empty slots of a sparse set hold 0 and do not change the sum)
+		double normConstant = getTotalWeight();
 
-		double oldWeight, newWeight;
-		for(BitVector b : mapping.keySet()){
-			oldWeight = getWeight(b);
-			newWeight = oldWeight/normConstant;
-			mapping.replace(b, newWeight);
+		for(int i = 0; i < weights.length; i++){
+			weights[i] = weights[i] / normConstant;
 		}
 	}
 
@@ -115,8 +329,8 @@ public class WeightedSet {
 	* Print weighted set contents
 	*/
 	public void printCPT(){
-		for(BitVector b : mapping.keySet()){
-			double weight = getWeight(b);
+		for(BitVector b : getEvents()){
+			System.out.println(b + " " + getWeight(b));
 		}
 	}
 
@@ -124,6 +338,60 @@ public class WeightedSet {
 	* Return size of weighted set
 	*/
 	public int getSize(){
-		return mapping.size();
+		return keys == null ? weights.length : count;
+	}
+
+	//The rank of an event, which is its index in a dense weights array
+	private long indexOf(BitVector event) {
+		if(event.length() != cardinalities.length) {
+			throw new IllegalArgumentException("Event has " + event.length() + " variables, expected " + cardinalities.length);
+		}
+		if(!binary) {
+			throw new IllegalStateException("A BitVector only describes configurations of boolean variables");
+		}
+		return event.toRank();
+	}
+
+	//The slot that holds the given rank in a sparse set, or the empty slot where it would go
+	private int find(long rank) {
+		long key = rank + 1;
+		int mask = keys.length - 1;
+		long h = key * 0x9E3779B97F4A7C15L;
+		int s = (int)(h ^ (h >>> 32)) & mask;
+		while(keys[s] != 0 && keys[s] != key) {
+			s = (s + 1) & mask;
+		}
+		return s;
+	}
+
+	//The slot that holds the given rank in a sparse set, inserting it with weight 0 if needed
+	private int slot(long rank) {
+		int s = find(rank);
+		if(keys[s] != 0) {
+			return s;
+		}
+		if(2 * (count + 1) > keys.length) {
+			grow();
+			s = find(rank);
+		}
+		keys[s] = rank + 1;
+		weights[s] = 0.0;
+		count++;
+		return s;
+	}
+
+	//Doubles the capacity of a sparse set
+	private void grow() {
+		long[] oldKeys = keys;
+		double[] oldWeights = weights;
+		keys = new long[oldKeys.length * 2];
+		weights = new double[oldKeys.length * 2];
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != 0) {
+				int s = find(oldKeys[i] - 1);
+				keys[s] = oldKeys[i];
+				weights[s] = oldWeights[i];
+			}
+		}
 	}
 }
@@ -0,0 +1,96 @@
+package util;
+
+/**
+ * A random source implementing xoshiro256++ (Blackman and Vigna), a small, fast generator
+ * with 256 bits of state and a period of 2^256 - 1.
+ *
+ * split() seeds the new stream with 256 bits of this generator's output, each passed through
+ * the SplitMix64 mixing function as java.util.SplittableRandom does. Every stream, and every
+ * stream split off a stream, therefore starts at its own random point of the period, and
+ * two of them only overlap with negligible probability however deeply splits are nested.
+ * Jumping a copy of the state instead would hand a child the same streams that its parent
+ * hands out after it. jump() is still available to partition one sequence explicitly.
+ *
+ * @author Sarah Walling-Bell
+ * @version March 29, 2019
+ */
+public class Xoshiro256 implements RandomSource {
+	private static final long[] JUMP = {
+		0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL
+	};
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	/**
+	 * Creates a generator whose state is expanded from the seed with SplitMix64
+	 * @param seed
+	 * 		The seed
+	 */
+	public Xoshiro256(long seed) {
+		s0 = mix(seed += 0x9E3779B97F4A7C15L);
+		s1 = mix(seed += 0x9E3779B97F4A7C15L);
+		s2 = mix(seed += 0x9E3779B97F4A7C15L);
+		s3 = mix(seed + 0x9E3779B97F4A7C15L);
+	}
+
+	private Xoshiro256(long s0, long s1, long s2, long s3) {
+		this.s0 = s0;
+		this.s1 = s1;
+		this.s2 = s2;
+		this.s3 = s3;
+	}
+
+	@Override
+	public long nextLong() {
+		long result = Long.rotateLeft(s0 + s3, 23) + s0;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	@Override
+	public RandomSource split() {
+		long t0 = mix(nextLong()), t1 = mix(nextLong()), t2 = mix(nextLong()), t3 = mix(nextLong());
+		if((t0 | t1 | t2 | t3) == 0) {
+			t0 = 0x9E3779B97F4A7C15L; //the all zero state is the one xoshiro never leaves
+		}
+		return new Xoshiro256(t0, t1, t2, t3);
+	}
+
+	/**
+	 * Advances the generator by 2^128 steps
+	 */
+	public void jump() {
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+		for(long word : JUMP) {
+			for(int b = 0; b < 64; b++) {
+				if((word & (1L << b)) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+
+	//The SplitMix64 output function
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
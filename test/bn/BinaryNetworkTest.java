@@ -0,0 +1,135 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinaryNetworkTest {
+
+	//every kind of CPT: dense, categorical, noisy-or, tree and noisy-max
+	private static final String MIXED = "6\n"
+		+ "a\n.3\n"
+		+ "b|a\n.9\n.2\n"
+		+ "level(high,low,none)|a\n.2 .3 .5\n.1 .1 .8\n"
+		+ "c|a,b\nnoisy-or\n.1\n.5\n.4\n"
+		+ "d|a,b,c\ntree\na\nb\n.9\n.8\n.1\n"
+		+ "e(severe,mild,none)|level\nnoisy-max\n.01 .09 .9\n.6 .3 .1\n.2 .5 .3\n";
+
+	@Test
+	public void writeThenLoadGivesTheSameNetwork(@TempDir Path dir) throws IOException {
+		CompiledNetwork[] networks = {
+			TestNetworks.parse(MIXED).getCompiledNetwork(),
+			TestNetworks.parse(TestNetworks.WEATHER).getCompiledNetwork(),
+			TestNetworks.bundled("earthquake_alarm.bn").getCompiledNetwork()
+		};
+		for(CompiledNetwork network : networks){
+			Path file = dir.resolve("network.bnb");
+			BinaryNetwork.write(network, file);
+			assertSame(network, BinaryNetwork.load(file));
+		}
+	}
+
+	@Test
+	public void loadsVersionOneFiles(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("v1.bnb");
+		Files.write(file, oldFile(1, new String[] { "a", "b" }, new int[][] { {}, { 0 } }, null, new double[] { .3, .9, .2 }));
+		CompiledNetwork loaded = BinaryNetwork.load(file);
+		assertSame(TestNetworks.parse("2\na\n.3\nb|a\n.9\n.2\n").getCompiledNetwork(), loaded);
+		assertEquals("true", loaded.getStateName(1, 0));
+	}
+
+	@Test
+	public void loadsVersionTwoFiles(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("v2.bnb");
+		Files.write(file, oldFile(2, new String[] { "a", "b", "c" }, new int[][] { {}, { 0 }, { 0, 1 } },
+			new byte[] { CPT.DENSE, CPT.DENSE, CPT.NOISY_OR }, new double[] { .3, .9, .2, .1, .5, .4 }));
+		assertSame(TestNetworks.parse("3\na\n.3\nb|a\n.9\n.2\nc|a,b\nnoisy-or\n.1\n.5\n.4\n").getCompiledNetwork(),
+			BinaryNetwork.load(file));
+	}
+
+	@Test
+	public void rejectsTruncatedFiles(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("network.bnb");
+		BinaryNetwork.write(TestNetworks.parse(MIXED).getCompiledNetwork(), file);
+		byte[] bytes = Files.readAllBytes(file);
+		for(int length : new int[] { 0, 20, 40, bytes.length - 8, bytes.length - 1 }){
+			Files.write(file, Arrays.copyOf(bytes, length));
+			assertThrows(IOException.class, () -> BinaryNetwork.load(file), "length " + length);
+		}
+	}
+
+	@Test
+	public void rejectsCorruptedHeaders(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("network.bnb");
+		BinaryNetwork.write(TestNetworks.parse(MIXED).getCompiledNetwork(), file);
+		byte[] bytes = Files.readAllBytes(file);
+		//the magic, the version (0 and a future one), the node count, the CPT position and
+		//the length of the first name
+		int[][] corruptions = { { 0, 'X' }, { 4, 0 }, { 4, BinaryNetwork.VERSION + 1 }, { 8, 7 }, { 8, -1 }, { 16, 12 },
+			{ 32, 100 } };
+		for(int[] corruption : corruptions){
+			byte[] corrupt = bytes.clone();
+			ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[0] == 0
+				? BinaryNetwork.MAGIC ^ corruption[1] : corruption[1]);
+			Files.write(file, corrupt);
+			assertThrows(IOException.class, () -> BinaryNetwork.load(file), "offset " + corruption[0]);
+		}
+	}
+
+	//Checks that two networks have the same nodes, states, parents and CPTs
+	private static void assertSame(CompiledNetwork expected, CompiledNetwork actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++){
+			assertEquals(expected.getName(i), actual.getName(i));
+			assertEquals(expected.getCardinality(i), actual.getCardinality(i));
+			for(int s = 0; s < expected.getCardinality(i); s++){
+				assertEquals(expected.getStateName(i, s), actual.getStateName(i, s));
+			}
+			assertArrayEquals(expected.getParents(i), actual.getParents(i));
+			assertEquals(expected.getKind(i), actual.getKind(i));
+			assertArrayEquals(expected.getParameters(i), actual.getParameters(i));
+		}
+	}
+
+	//A file in an older version of the format: no states, and before version 2 no kinds
+	private static byte[] oldFile(int version, String[] names, int[][] parents, byte[] kinds, double[] parameters) {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+		int numParents = 0;
+		for(int[] p : parents){
+			numParents += p.length;
+		}
+		buffer.putInt(BinaryNetwork.MAGIC).putInt(version).putInt(names.length).putInt(numParents).putLong(0).putLong(parameters.length);
+		for(String name : names){
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(bytes.length).put(bytes);
+		}
+		for(int[] p : parents){
+			buffer.putInt(p.length);
+		}
+		for(int[] p : parents){
+			for(int id : p){
+				buffer.putInt(id);
+			}
+		}
+		if(kinds != null){
+			buffer.put(kinds);
+		}
+		int cptPosition = (buffer.position() + 7) & ~7;
+		buffer.putLong(16, cptPosition).position(cptPosition);
+		for(double parameter : parameters){
+			buffer.putDouble(parameter);
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+}
@@ -0,0 +1,112 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+public class BlockSamplerTest {
+
+	//100 full blocks and a last block of 1033 samples, whose last word holds 9
+	private static final int NUM_SAMPLES = 100 * BlockSampler.BLOCK_SIZE + 1033;
+
+	@Test
+	public void directSamplingAgreesWithVariableElimination() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		BlockSampler sampler = new BlockSampler(network.getCompiledNetwork());
+		//two query variables are tallied with popcounts, five sample by sample
+		for(String query : new String[] { "p(john_calls,burglary)", "p(burglary,earthquake,alarm,john_calls,mary_calls)" }){
+			QueryPlan plan = network.compile(Query.processQuery(query));
+			WeightedSet tally = plan.newTally();
+			assertEquals(NUM_SAMPLES, sampler.directSample(plan, NUM_SAMPLES, RandomSource.seeded(1), tally));
+			assertEquals(NUM_SAMPLES, tally.getTotalWeight());
+			assertAgrees(network.variableElimination(plan), tally, NUM_SAMPLES, query);
+		}
+	}
+
+	@Test
+	public void rejectionSamplingAgreesWithVariableElimination() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		BlockSampler sampler = new BlockSampler(network.getCompiledNetwork());
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary,earthquake|john_calls)"));
+		WeightedSet tally = plan.newTally();
+		double accepted = sampler.rejectionSample(plan, NUM_SAMPLES, RandomSource.seeded(2), tally);
+		assertEquals(accepted, tally.getTotalWeight());
+		//p(john_calls) = 0.0521
+		assertEquals(0.0521 * NUM_SAMPLES, accepted, 5 * Math.sqrt(0.0521 * NUM_SAMPLES));
+		assertAgrees(network.variableElimination(plan), tally, accepted, "rejection");
+	}
+
+	@Test
+	public void likelihoodWeightingAgreesWithVariableElimination() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		BlockSampler sampler = new BlockSampler(network.getCompiledNetwork());
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary,earthquake|alarm)"));
+		WeightedSet tally = plan.newTally();
+		sampler.likelihoodWeighting(plan, NUM_SAMPLES, RandomSource.seeded(3), tally);
+		//the weights of p(alarm) about 0.0025 leave an effective sample size of about 1000
+		assertAgrees(network.variableElimination(plan), tally, 1000, "likelihood weighting");
+	}
+
+	@Test
+	public void partlyFilledBlocksOnlyTallyTheirSamples() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("wet_grass.bn");
+		BlockSampler sampler = new BlockSampler(network.getCompiledNetwork());
+		QueryPlan plan = network.compile(Query.processQuery("p(" + network.getCompiledNetwork().getName(0) + ")"));
+		for(int numSamples : new int[] { 1, 63, 64, 65, BlockSampler.BLOCK_SIZE - 1, BlockSampler.BLOCK_SIZE + 1 }){
+			WeightedSet tally = plan.newTally();
+			assertEquals(numSamples, sampler.directSample(plan, numSamples, RandomSource.seeded(numSamples), tally));
+			assertEquals(numSamples, tally.getTotalWeight());
+			WeightedSet weighted = plan.newTally();
+			sampler.likelihoodWeighting(plan, numSamples, RandomSource.seeded(numSamples), weighted);
+			assertEquals(numSamples, weighted.getTotalWeight(), 1e-9);
+		}
+	}
+
+	@Test
+	public void wideNoisyOrIsDrawnFromItsCPT() throws IOException {
+		//more parents than MAX_TABLE_PARENTS, every one true with probability 1/2
+		int numParents = BlockSampler.MAX_TABLE_PARENTS + 2;
+		StringBuilder text = new StringBuilder().append(numParents + 1).append('\n');
+		StringBuilder header = new StringBuilder("c|");
+		StringBuilder causes = new StringBuilder();
+		double noEffect = 1 - .05;
+		for(int p = 0; p < numParents; p++){
+			text.append("p").append(p).append("\n.5\n");
+			header.append(p > 0 ? "," : "").append("p").append(p);
+			causes.append(.01 * (p + 1)).append('\n');
+			noEffect *= 1 - .5 * .01 * (p + 1);
+		}
+		BayesianNetwork network = TestNetworks.parse(text.append(header).append("\nnoisy-or\n.05\n").append(causes).toString());
+		BlockSampler sampler = new BlockSampler(network.getCompiledNetwork());
+		QueryPlan plan = network.compile(Query.processQuery("p(c)"));
+		WeightedSet tally = plan.newTally();
+		sampler.directSample(plan, NUM_SAMPLES, RandomSource.seeded(4), tally);
+		double p = 1 - noEffect;
+		assertEquals(p * NUM_SAMPLES, tally.getWeight(0), 5 * Math.sqrt(NUM_SAMPLES * p * (1 - p)));
+	}
+
+	@Test
+	public void rejectsMultiValuedVariables() throws IOException {
+		BayesianNetwork network = TestNetworks.parse(TestNetworks.WEATHER);
+		BlockSampler sampler = new BlockSampler(network.getCompiledNetwork());
+		QueryPlan plan = network.compile(Query.processQuery("p(umbrella)"));
+		assertThrows(IllegalArgumentException.class, () -> sampler.directSample(plan, 10, RandomSource.seeded(5), plan.newTally()));
+	}
+
+	//Checks that a tally is within five standard errors of the exact answer, for an estimate
+	//from the given number of (effective) samples
+	private static void assertAgrees(WeightedSet exact, WeightedSet tally, double numSamples, String message) {
+		double total = tally.getTotalWeight();
+		for(long rank : exact.getEventRanks()){
+			double p = exact.getWeight(rank);
+			assertEquals(p, tally.getWeight(rank) / total, 5 * Math.sqrt(p * (1 - p) / numSamples) + 1e-9, message + ", rank " + rank);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import util.RandomSource;
+
+public class CompiledNetworkTest {
+
+	//Probabilities at the edges of the 53-bit comparison
+	private static final String EDGES = "6\n"
+		+ "a\n.5\n"
+		+ "b|a\n0\n1\n"
+		+ "c|a\n1e-17\n.99999999999999999\n"
+		+ "d|a\n0.1\n0.30000000000000004\n"
+		+ "e|a\n" + 0x1p-53 + "\n" + (1 - 0x1p-53) + "\n"
+		+ "f|a\n" + 0x1.8p-53 + "\n" + Math.nextDown(1.0) + "\n";
+
+	@Test
+	public void twoStateDrawsMatchNextDouble() throws IOException {
+		CompiledNetwork[] networks = {
+			TestNetworks.bundled("earthquake_alarm.bn").getCompiledNetwork(),
+			TestNetworks.bundled("wet_grass.bn").getCompiledNetwork(),
+			TestNetworks.parse(EDGES).getCompiledNetwork(),
+			TestNetworks.parse(wideNoisyOr()).getCompiledNetwork() //too large for a table, sampled from the CPT
+		};
+		for(CompiledNetwork network : networks){
+			RandomSource tables = RandomSource.seeded(11);
+			RandomSource direct = RandomSource.seeded(11);
+			RandomSource parents = RandomSource.seeded(12);
+			int[] assignment = new int[network.size()];
+			for(int draw = 0; draw < 20000; draw++){
+				for(int i = 0; i < network.size(); i++){
+					assignment[i] = parents.nextBoolean() ? 0 : 1;
+				}
+				for(int i = 0; i < network.size(); i++){
+					double p = network.getProbability(i, assignment, 0);
+					int expected = direct.nextDouble() < p ? 0 : 1;
+					assertEquals(expected, network.sample(i, assignment, tables), network.getName(i) + " p = " + p);
+					assertEquals(expected, assignment[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void aliasDrawsFollowTheRow() throws IOException {
+		//rows with states of probability 0, a certain state and states that need tiny thresholds
+		double[][] rows = {
+			{ .5, 0, .2, 0, .3 },
+			{ 0, 0, 0, 0, 1 },
+			{ .1, .2, .3, .15, .25 },
+			{ 1e-3, 0, .999, 0, 0 },
+			{ .2, .2, .2, .2, .2 }
+		};
+		StringBuilder text = new StringBuilder("2\nx(a,b,c,d,e)\n.2 .2 .2 .2 .2\ny(p,q,r,s,t)|x\n");
+		for(double[] row : rows){
+			for(double p : row){
+				text.append(p).append(' ');
+			}
+			text.append('\n');
+		}
+		CompiledNetwork network = TestNetworks.parse(text.toString()).getCompiledNetwork();
+
+		int numDraws = 200000;
+		RandomSource random = RandomSource.seeded(5);
+		int[] assignment = new int[2];
+		for(int row = 0; row < rows.length; row++){
+			int[] counts = new int[5];
+			assignment[0] = row;
+			for(int draw = 0; draw < numDraws; draw++){
+				counts[network.sample(1, assignment, random)]++;
+			}
+			for(int s = 0; s < 5; s++){
+				double p = rows[row][s];
+				if(p == 0){
+					assertEquals(0, counts[s], "row " + row + " state " + s);
+				}
+				else{
+					double sigma = Math.sqrt(numDraws * p * (1 - p));
+					assertEquals(numDraws * p, counts[s], 5 * sigma + 1, "row " + row + " state " + s);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rowsWithoutProbabilityCannotBeSampled(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("network.bnb");
+		BinaryNetwork.write(TestNetworks.parse("2\nx\n.5\ny(p,q,r)|x\n.2 .3 .5\n.6 .3 .1\n").getCompiledNetwork(), file);
+		//the CPT block ends with the two rows of y; clear the second one
+		byte[] bytes = Files.readAllBytes(file);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		for(int s = 1; s <= 3; s++){
+			buffer.putDouble(bytes.length - 8 * s, 0);
+		}
+		Files.write(file, bytes);
+		CompiledNetwork network = BinaryNetwork.load(file);
+
+		RandomSource random = RandomSource.seeded(3);
+		int[] assignment = { 0, 0 };
+		assertTrue(network.sample(1, assignment, random) < 3);
+		assignment[0] = 1;
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> network.sample(1, assignment, random));
+		assertTrue(e.getMessage().contains("\"y\""));
+	}
+
+	//A noisy-OR node with more parents than a sampling table may cover
+	private static String wideNoisyOr() {
+		int numParents = CPT.MAX_DENSE_PARENTS + 2;
+		StringBuilder text = new StringBuilder().append(numParents + 1).append('\n');
+		StringBuilder header = new StringBuilder("c|");
+		StringBuilder causes = new StringBuilder();
+		for(int p = 0; p < numParents; p++){
+			text.append("p").append(p).append('\n').append(.5).append('\n');
+			header.append(p > 0 ? "," : "").append("p").append(p);
+			causes.append(.01 * (p + 1)).append('\n');
+		}
+		return text.append(header).append("\nnoisy-or\n.05\n").append(causes).toString();
+	}
+}
@@ -0,0 +1,49 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import util.BitVector;
+import util.WeightedSet;
+
+public class EstimateTest {
+
+	@Test
+	public void standardErrorOfEveryStateOfAMultiValuedQuery() throws IOException {
+		BayesianNetwork network = TestNetworks.parse(TestNetworks.WEATHER);
+		QueryPlan plan = network.compile(Query.processQuery("p(weather|umbrella=no)"));
+		//weights 1, 1, 2 and 4 give an effective sample size of 8^2 / 22
+		WeightedSet tally = plan.newTally();
+		tally.increment(0, 1);
+		tally.increment(0, 1);
+		tally.increment(1, 2);
+		tally.increment(2, 4);
+		Estimate estimate = new Estimate(tally, 22, 4, false);
+
+		double ess = 64.0 / 22;
+		assertEquals(ess, estimate.getEffectiveSampleSize(), 1e-12);
+		double[] p = { 0.25, 0.25, 0.5 };
+		for(int rank = 0; rank < 3; rank++){
+			assertEquals(Math.sqrt(p[rank] * (1 - p[rank]) / ess), estimate.getStandardError(rank), 1e-12);
+		}
+		assertEquals(estimate.getStandardError(2), estimate.getMaxStandardError(), 1e-12);
+	}
+
+	@Test
+	public void rankAndEventAgreeForBooleanQueries() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary,earthquake)"));
+		WeightedSet tally = plan.newTally();
+		for(int rank = 0; rank < 4; rank++){
+			tally.increment(rank, rank + 1);
+		}
+		Estimate estimate = new Estimate(tally, 30, 4, true);
+		for(BitVector event : estimate.getDistribution().getEvents()){
+			assertEquals(estimate.getStandardError(event), estimate.getStandardError(event.toRank()), 1e-15);
+		}
+	}
+}
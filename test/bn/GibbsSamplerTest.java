@@ -0,0 +1,39 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+public class GibbsSamplerTest {
+
+	//b is only true when a is, and a is never true
+	private static final String IMPOSSIBLE = "2\na\n0\nb|a\n1\n0\n";
+
+	@Test
+	public void impossibleEvidenceGivesNaN() throws IOException {
+		BayesianNetwork network = TestNetworks.parse(IMPOSSIBLE);
+		QueryPlan plan = network.compile(Query.processQuery("p(a|b)"));
+		GibbsResult result = new GibbsSampler(network).sample(plan, 4000, RandomSource.seeded(1));
+		assertTrue(Double.isNaN(result.getDistribution().getWeight(0)));
+		assertTrue(Double.isNaN(result.getDistribution().getWeight(1)));
+		assertTrue(Double.isNaN(result.getRHat()));
+		assertTrue(Double.isNaN(network.likelihoodWeighting(plan, 4000, RandomSource.seeded(1)).getWeight(0)));
+	}
+
+	@Test
+	public void agreesWithVariableElimination() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary|john_calls,mary_calls)"));
+		WeightedSet exact = network.variableElimination(plan);
+		GibbsResult result = new GibbsSampler(network).sample(plan, 400000, RandomSource.seeded(2));
+		assertEquals(exact.getWeight(0), result.getDistribution().getWeight(0), 0.01);
+		assertTrue(result.getRHat() < 1.1);
+	}
+}
@@ -0,0 +1,128 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import util.WeightedSet;
+
+public class JunctionTreeTest {
+
+	//two components: a -> b and c -> d with three-state c and d
+	private static final String DISCONNECTED = "4\n"
+		+ "a\n.3\n"
+		+ "b|a\n.9\n.2\n"
+		+ "c(low,mid,high)\n.5 .3 .2\n"
+		+ "d(x,y,z)|c\n.7 .2 .1\n.1 .8 .1\n.2 .2 .6\n";
+
+	@Test
+	public void agreesWithVariableEliminationOnTheAlarmNetwork() throws IOException {
+		assertAgreesOnEveryEvidence(TestNetworks.bundled("earthquake_alarm.bn"));
+	}
+
+	@Test
+	public void agreesWithVariableEliminationOnTheWetGrassNetwork() throws IOException {
+		assertAgreesOnEveryEvidence(TestNetworks.bundled("wet_grass.bn"));
+	}
+
+	@Test
+	public void agreesWithVariableEliminationOnAMultiValuedNetwork() throws IOException {
+		assertAgreesOnEveryEvidence(TestNetworks.parse(TestNetworks.WEATHER));
+	}
+
+	@Test
+	public void agreesWithVariableEliminationOnADisconnectedNetwork() throws IOException {
+		BayesianNetwork network = TestNetworks.parse(DISCONNECTED);
+		assertAgreesOnEveryEvidence(network);
+		//the query variables are in different components, so no clique holds both
+		assertAgrees(network, "p(a,c|d=z)");
+		assertAgrees(network, "p(b,d|a,c=mid)");
+	}
+
+	@Test
+	public void fallsBackToVariableEliminationWithoutACommonClique() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		int[] calls = { compiled.getId("john_calls"), compiled.getId("mary_calls") };
+		Arrays.sort(calls);
+		for(int[] clique : new JunctionTree(network).getCliques()){
+			boolean both = Arrays.binarySearch(clique, calls[0]) >= 0 && Arrays.binarySearch(clique, calls[1]) >= 0;
+			assertFalse(both, "the calls should only meet through alarm");
+		}
+		assertAgrees(network, "p(john_calls,mary_calls)");
+		assertAgrees(network, "p(john_calls,mary_calls|burglary)");
+		assertAgrees(network, "p(burglary,john_calls,mary_calls|!earthquake)");
+	}
+
+	@Test
+	public void evidenceLeavesTheCalibrationIntact() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		//queries with evidence recompute messages; later queries must still see the calibrated ones
+		String[] queries = { "p(burglary)", "p(burglary|john_calls,mary_calls)", "p(burglary)", "p(earthquake|!mary_calls)",
+			"p(alarm)", "p(alarm|burglary)", "p(john_calls)", "p(mary_calls|!burglary,earthquake)", "p(burglary)" };
+		for(String query : queries){
+			assertAgrees(network, query);
+		}
+	}
+
+
+	//Compares the two exact methods on every single-variable query, given every assignment
+	//of up to two other variables as evidence
+	private static void assertAgreesOnEveryEvidence(BayesianNetwork network) {
+		CompiledNetwork compiled = network.getCompiledNetwork();
+		int n = compiled.size();
+		for(int q = 0; q < n; q++){
+			assertAgrees(network, "p(" + compiled.getName(q) + ")");
+			for(int e = 0; e < n; e++){
+				for(int f = e; f < n; f++){
+					if(e == q || f == q){
+						continue;
+					}
+					for(String evidence : assignments(compiled, e == f ? new int[] { e } : new int[] { e, f })){
+						assertAgrees(network, "p(" + compiled.getName(q) + "|" + evidence + ")");
+					}
+				}
+			}
+		}
+	}
+
+	//Every assignment of the given nodes, written as query evidence
+	private static List<String> assignments(CompiledNetwork compiled, int[] ids) {
+		List<String> result = new ArrayList<String>();
+		result.add("");
+		for(int id : ids){
+			List<String> extended = new ArrayList<String>();
+			for(String prefix : result){
+				for(int s = 0; s < compiled.getCardinality(id); s++){
+					String literal = compiled.getName(id) + "=" + compiled.getStateName(id, s);
+					extended.add(prefix.isEmpty() ? literal : prefix + "," + literal);
+				}
+			}
+			result = extended;
+		}
+		return result;
+	}
+
+	private static void assertAgrees(BayesianNetwork network, String query) {
+		QueryPlan plan = network.compile(Query.processQuery(query));
+		WeightedSet expected = network.variableElimination(plan);
+		WeightedSet actual = network.junctionTree(plan);
+		for(long rank : expected.getEventRanks()){
+			double e = expected.getWeight(rank);
+			double a = actual.getWeight(rank);
+			if(Double.isNaN(e)){
+				assertEquals(e, a, query); //impossible evidence
+			}
+			else{
+				assertEquals(e, a, 1e-12, query);
+			}
+		}
+	}
+}
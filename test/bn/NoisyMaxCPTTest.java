@@ -0,0 +1,126 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import tui.NetworkFormatException;
+import tui.Query;
+import util.WeightedSet;
+
+public class NoisyMaxCPTTest {
+
+	//fever is high, mild or none; flu is boolean; infection is severe, light or none
+	private static final String FEVER = "3\n"
+		+ "flu\n.1\n"
+		+ "infection(severe,light,none)\n.05 .15 .8\n"
+		+ "fever(high,mild,none)|flu,infection\nnoisy-max\n"
+		+ ".01 .04 .95\n"
+		+ ".4 .5 .1\n"
+		+ ".7 .2 .1\n"
+		+ ".1 .3 .6\n";
+
+	@Test
+	public void booleanNoisyMaxIsNoisyOr() {
+		double leak = 0.02;
+		double[] causes = { 0.9, 0.35, 0.6, 0.05 };
+		double[][] distributions = new double[causes.length][];
+		for(int p = 0; p < causes.length; p++){
+			distributions[p] = new double[] { causes[p], 1 - causes[p] };
+		}
+		CPT noisyOr = new NoisyOrCPT(leak, causes);
+		CPT noisyMax = new NoisyMaxCPT(CPT.booleanParents(causes.length), 2, new double[] { leak, 1 - leak }, distributions);
+		int[] states = new int[causes.length];
+		for(int row = 0; row < 1 << causes.length; row++){
+			for(int p = 0; p < states.length; p++){
+				states[p] = (row >>> (states.length - 1 - p)) & 1;
+			}
+			for(int s = 0; s < 2; s++){
+				assertEquals(noisyOr.getProbability(states, s), noisyMax.getProbability(states, s), 1e-15);
+			}
+		}
+	}
+
+	@Test
+	public void takesTheHighestDegree() {
+		CPT cpt = new NoisyMaxCPT(new int[] { 2, 3 }, 3, new double[] { .01, .04, .95 },
+			new double[][] { { .4, .5, .1 }, { .7, .2, .1 }, { .1, .3, .6 } });
+		//flu and a light infection: p(at most none) = .95 * .1 * .6, p(at most mild) = .99 * .6 * .9
+		int[] states = { 0, 1 };
+		assertEquals(.057, cpt.getProbability(states, 2), 1e-12);
+		assertEquals(.5346 - .057, cpt.getProbability(states, 1), 1e-12);
+		assertEquals(1 - .5346, cpt.getProbability(states, 0), 1e-12);
+		//every parent normal leaves the leak
+		assertEquals(.04, cpt.getProbability(new int[] { 1, 2 }, 1), 1e-15);
+	}
+
+	@Test
+	public void tableAgreesWithEveryConfiguration() throws IOException {
+		CompiledNetwork network = TestNetworks.parse(FEVER).getCompiledNetwork();
+		int fever = network.getId("fever");
+		double[] table = network.getTable(fever);
+		int[] assignment = new int[network.size()];
+		for(int flu = 0; flu < 2; flu++){
+			for(int infection = 0; infection < 3; infection++){
+				assignment[network.getId("flu")] = flu;
+				assignment[network.getId("infection")] = infection;
+				double sum = 0;
+				for(int s = 0; s < 3; s++){
+					double p = network.getProbability(fever, assignment, s);
+					assertEquals(table[(flu * 3 + infection) * 3 + s], p, 1e-15);
+					sum += p;
+				}
+				assertEquals(1, sum, 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void inferenceAgreesWithTheExpandedTable() throws IOException {
+		BayesianNetwork noisyMax = TestNetworks.parse(FEVER);
+		CompiledNetwork compiled = noisyMax.getCompiledNetwork();
+		double[] table = compiled.getTable(compiled.getId("fever"));
+		StringBuilder expanded = new StringBuilder(FEVER.substring(0, FEVER.indexOf("noisy-max")));
+		for(int row = 0; row < 6; row++){
+			expanded.append(table[3 * row]).append(' ').append(table[3 * row + 1]).append(' ').append(table[3 * row + 2]).append('\n');
+		}
+		BayesianNetwork full = TestNetworks.parse(expanded.toString());
+
+		for(String query : new String[] { "p(flu|fever=high)", "p(infection|fever=mild)", "p(fever|flu)" }){
+			WeightedSet expected = full.variableElimination(Query.processQuery(query));
+			WeightedSet actual = noisyMax.variableElimination(Query.processQuery(query));
+			for(long rank : expected.getEventRanks()){
+				assertEquals(expected.getWeight(rank), actual.getWeight(rank), 1e-12, query);
+			}
+		}
+	}
+
+	@Test
+	public void survivesTheBinaryFormat(@TempDir Path dir) throws IOException {
+		CompiledNetwork network = TestNetworks.parse(FEVER).getCompiledNetwork();
+		Path file = dir.resolve("fever.bnb");
+		BinaryNetwork.write(network, file);
+		CompiledNetwork loaded = BinaryNetwork.load(file);
+		int fever = network.getId("fever");
+		double[] expected = network.getTable(fever);
+		double[] actual = loaded.getTable(fever);
+		for(int e = 0; e < expected.length; e++){
+			assertEquals(expected[e], actual[e]);
+		}
+	}
+
+	@Test
+	public void rejectsDistributionsThatDoNotSumToOne() {
+		String bad = FEVER.replace(".7 .2 .1", ".7 .2 .2");
+		NetworkFormatException e = assertThrows(NetworkFormatException.class, () -> TestNetworks.parse(bad));
+		assertEquals(10, e.getLineNumber());
+		assertThrows(NetworkFormatException.class, () -> TestNetworks.parse(FEVER.substring(0, FEVER.lastIndexOf(".1 .3 .6"))));
+		assertThrows(IllegalArgumentException.class, () -> new NoisyMaxCPT(new int[] { 3 }, 2, new double[] { .5, .5 },
+			new double[][] { { .5, .5 } }));
+	}
+}
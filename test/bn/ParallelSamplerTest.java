@@ -0,0 +1,95 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import util.RandomSource;
+import util.WeightedSet;
+
+public class ParallelSamplerTest {
+
+	private static final int NUM_SAMPLES = 400000;
+
+	private BayesianNetwork network;
+	private ExecutorService executor;
+	private ParallelSampler parallel;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		network = TestNetworks.bundled("earthquake_alarm.bn");
+		executor = Executors.newFixedThreadPool(4);
+		parallel = new ParallelSampler(network, executor, 7);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void directSamplingAgreesWithOneThread() {
+		QueryPlan plan = network.compile(Query.processQuery("p(john_calls,burglary)"));
+		WeightedSet single = network.directSample(plan, NUM_SAMPLES, RandomSource.seeded(1));
+		WeightedSet split = parallel.directSample(plan, NUM_SAMPLES, RandomSource.seeded(1));
+		assertAgrees(network.variableElimination(plan), single, split, NUM_SAMPLES);
+	}
+
+	@Test
+	public void rejectionSamplingAgreesWithOneThread() {
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary,earthquake|john_calls)"));
+		RejectionResult single = network.rejectionSamplingResult(plan, NUM_SAMPLES, RandomSource.seeded(2));
+		WeightedSet split = parallel.rejectionSampling(plan, NUM_SAMPLES, RandomSource.seeded(2));
+		assertAgrees(network.variableElimination(plan), single.getDistribution(), split, single.getAcceptedSamples());
+	}
+
+	@Test
+	public void likelihoodWeightingAgreesWithOneThread() {
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary,earthquake|alarm)"));
+		WeightedSet single = network.likelihoodWeighting(plan, NUM_SAMPLES, RandomSource.seeded(3));
+		WeightedSet split = parallel.likelihoodWeighting(plan, NUM_SAMPLES, RandomSource.seeded(3));
+		//the weights of p(alarm) about 0.0025 leave an effective sample size of about 1000
+		assertAgrees(network.variableElimination(plan), single, split, 1000);
+	}
+
+	@Test
+	public void sameRootGivesTheSameResult() {
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary|john_calls,mary_calls)"));
+		WeightedSet first = parallel.likelihoodWeighting(plan, 100003, RandomSource.seeded(4));
+		ExecutorService oneThread = Executors.newSingleThreadExecutor();
+		WeightedSet second;
+		try {
+			second = new ParallelSampler(network, oneThread, 7).likelihoodWeighting(plan, 100003, RandomSource.seeded(4));
+		}
+		finally {
+			oneThread.shutdown();
+		}
+		for(long rank : first.getEventRanks()){
+			assertEquals(first.getWeight(rank), second.getWeight(rank));
+		}
+		//fewer samples than tasks leaves some tasks without any
+		WeightedSet few = parallel.directSample(network.compile(Query.processQuery("p(burglary)")), 3, RandomSource.seeded(5));
+		assertArrayEquals(new long[] { 0, 1 }, few.getEventRanks());
+		assertEquals(1, few.getWeight(0) + few.getWeight(1), 1e-15);
+	}
+
+	//Checks that both estimates are within five standard errors of the exact answer and of
+	//each other, for an estimate from the given number of (effective) samples
+	private static void assertAgrees(WeightedSet exact, WeightedSet single, WeightedSet split, double numSamples) {
+		for(long rank : exact.getEventRanks()){
+			double p = exact.getWeight(rank);
+			double error = 5 * Math.sqrt(p * (1 - p) / numSamples) + 1e-9;
+			assertEquals(p, single.getWeight(rank), error, "single-threaded, rank " + rank);
+			assertEquals(p, split.getWeight(rank), error, "parallel, rank " + rank);
+			assertEquals(single.getWeight(rank), split.getWeight(rank), Math.sqrt(2) * error, "rank " + rank);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import tui.Reader;
+import util.RandomSource;
+
+public class QueryCacheTest {
+
+	private static final String ALARM = "5\n"
+		+ "Burglary\n.001\n"
+		+ "Earthquake\n.002\n"
+		+ "Alarm|Burglary,Earthquake\n.95\n.94\n.29\n.001\n"
+		+ "John_Calls|Alarm\n.90\n.05\n"
+		+ "Mary_Calls|Alarm\n.70\n.01\n";
+
+	private static BayesianNetwork alarm() throws IOException {
+		return new BayesianNetwork(Reader.read(new ByteArrayInputStream(ALARM.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	public void reseedingChangesTheAnswer() throws IOException {
+		BayesianNetwork network = alarm();
+		QueryCache cache = new QueryCache(network, 4);
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary|john_calls,mary_calls)"));
+
+		network.setRandomSource(RandomSource.seeded(1));
+		double first = cache.query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0);
+		assertEquals(first, cache.query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0));
+		assertEquals(1, cache.getHits());
+
+		network.setRandomSource(RandomSource.seeded(2));
+		double reseeded = cache.query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0);
+		assertNotEquals(first, reseeded);
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		network.setRandomSource(RandomSource.seeded(1));
+		assertEquals(first, cache.query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0));
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void reseedingWhileSamplingStartsOverUnderTheNewRoot() throws IOException {
+		//reseeds the network just before the first stream is split off, as another thread could
+		BayesianNetwork network = new BayesianNetwork(alarm().getNodes()) {
+			private boolean reseeded;
+
+			@Override
+			synchronized RandomSource newRandomStream(long generation) {
+				if(!reseeded) {
+					reseeded = true;
+					setRandomSource(RandomSource.seeded(2));
+				}
+				return super.newRandomStream(generation);
+			}
+		};
+		network.setRandomSource(RandomSource.seeded(1));
+		QueryCache cache = new QueryCache(network, 4);
+		QueryPlan plan = network.compile(Query.processQuery("p(burglary|john_calls,mary_calls)"));
+		double raced = cache.query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0);
+
+		BayesianNetwork fresh = alarm();
+		fresh.setRandomSource(RandomSource.seeded(2));
+		double expected = new QueryCache(fresh, 4).query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0);
+		assertEquals(expected, raced);
+		//the samples of the new root are cached under the new root
+		assertEquals(expected, cache.query(plan, SamplingMethod.LIKELIHOOD_WEIGHTING, 2000).getWeight(0));
+		assertEquals(1, cache.getHits());
+	}
+}
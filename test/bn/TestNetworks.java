@@ -0,0 +1,50 @@
+package bn;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import tui.Reader;
+
+/**
+ * Networks shared by the tests: the two networks bundled with the sources and small
+ * networks written inline in the .bn format.
+ */
+public final class TestNetworks {
+
+	/** A three-state weather node between a four-state season and two observed children */
+	public static final String WEATHER = "5\n"
+		+ "Season(spring,summer,fall,winter)\n.25 .25 .25 .25\n"
+		+ "Weather(sunny,cloudy,rain)|Season\n.5 .3 .2\n.7 .2 .1\n.3 .4 .3\n.2 .4 .4\n"
+		+ "Sprinkler|Season\n.4\n.7\n.2\n.05\n"
+		+ "Wet(dry,damp,soaked)|Weather,Sprinkler\n.1 .5 .4\n.9 .08 .02\n.05 .45 .5\n.6 .3 .1\n0 .2 .8\n.1 .3 .6\n"
+		+ "Umbrella(yes,no)|Weather\n.1 .9\n.4 .6\n.9 .1\n";
+
+	private TestNetworks() {
+	}
+
+	/**
+	 * Reads a network bundled with the sources
+	 *
+	 * @param name
+	 * 			The file name, e.g. earthquake_alarm.bn
+	 * @return The network
+	 */
+	public static BayesianNetwork bundled(String name) throws IOException {
+		try(InputStream in = TestNetworks.class.getResourceAsStream("/" + name)) {
+			return new BayesianNetwork(Reader.read(in));
+		}
+	}
+
+	/**
+	 * Reads a network written in the .bn format
+	 *
+	 * @param text
+	 * 			The contents of a .bn file
+	 * @return The network
+	 */
+	public static BayesianNetwork parse(String text) throws IOException {
+		return new BayesianNetwork(Reader.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+	}
+}
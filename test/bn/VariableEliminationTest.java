@@ -0,0 +1,76 @@
+package bn;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import tui.Query;
+import util.WeightedSet;
+
+public class VariableEliminationTest {
+
+	private static WeightedSet query(BayesianNetwork network, String query) {
+		return network.variableElimination(Query.processQuery(query));
+	}
+
+	@Test
+	public void alarmPosteriors() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		//by enumerating the full joint: p(b, j, m) = 5.92243e-4 and p(j, m) = 2.08410e-3
+		assertEquals(0.284172, query(network, "p(burglary|john_calls,mary_calls)").getWeight(0), 1e-6);
+		assertEquals(0.176067, query(network, "p(earthquake|john_calls,mary_calls)").getWeight(0), 1e-6);
+		assertEquals(0.052139, query(network, "p(john_calls)").getWeight(0), 1e-6);
+		assertEquals(0.002516, query(network, "p(alarm)").getWeight(0), 1e-6);
+		assertEquals(9.0184e-5, query(network, "p(burglary|!john_calls,!mary_calls)").getWeight(0), 1e-9);
+	}
+
+	@Test
+	public void jointOfQueryVariables() throws IOException {
+		BayesianNetwork network = TestNetworks.bundled("earthquake_alarm.bn");
+		WeightedSet joint = query(network, "p(burglary,earthquake|alarm)");
+		double total = 0;
+		for(long rank = 0; rank < 4; rank++){
+			total += joint.getWeight(rank);
+		}
+		assertEquals(1, total, 1e-12);
+		assertEquals(0.373551, query(network, "p(burglary|alarm)").getWeight(0), 1e-6);
+	}
+
+	@Test
+	public void barrenNodesAreNeverExpanded() throws IOException {
+		//c has 32 parents, too many for a table, but it is barren for queries about the parents
+		StringBuilder text = new StringBuilder("34\n");
+		StringBuilder parents = new StringBuilder();
+		for(int p = 0; p < 32; p++){
+			text.append("p").append(p).append("\n.1\n");
+			parents.append(p == 0 ? "" : ",").append("p").append(p);
+		}
+		text.append("c|").append(parents).append("\nnoisy-or\n.01\n");
+		for(int p = 0; p < 32; p++){
+			text.append(".5\n");
+		}
+		text.append("d|c\n.8\n.1\n");
+		BayesianNetwork network = TestNetworks.parse(text.toString());
+
+		assertEquals(0.1, query(network, "p(p0)").getWeight(0), 1e-12);
+		assertEquals(0.01, query(network, "p(p0,p1)").getWeight(0), 1e-12);
+		assertThrows(IllegalStateException.class, () -> query(network, "p(p0|d)"));
+	}
+
+	@Test
+	public void oversizedFactorsAreRejected() {
+		int[] vars = new int[31];
+		int[] cards = new int[31];
+		for(int j = 0; j < vars.length; j++){
+			vars[j] = j;
+			cards[j] = 2;
+		}
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> Factor.unit(vars, cards));
+		assertTrue(e.getMessage().contains("31 variables is too large"));
+		assertThrows(IllegalStateException.class, () -> Factor.unit(new int[] { 0, 1, 2 }, new int[] { 1 << 12, 1 << 12, 1 << 12 }));
+	}
+}
@@ -0,0 +1,84 @@
+package tui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import bn.BayesianNetwork;
+
+public class InferenceServerTest {
+
+	private static final String ALARM = "5\n"
+		+ "Burglary\n.001\n"
+		+ "Earthquake\n.002\n"
+		+ "Alarm|Burglary,Earthquake\n.95\n.94\n.29\n.001\n"
+		+ "John_Calls|Alarm\n.90\n.05\n"
+		+ "Mary_Calls|Alarm\n.70\n.01\n";
+
+	private InferenceServer server;
+
+	@BeforeEach
+	public void start() throws IOException {
+		BayesianNetwork bn = new BayesianNetwork(Reader.read(new ByteArrayInputStream(ALARM.getBytes(StandardCharsets.UTF_8))));
+		server = new InferenceServer(bn, 0, 2, 2);
+		server.start();
+	}
+
+	@AfterEach
+	public void stop() {
+		server.stop(0);
+	}
+
+	@Test
+	public void directSamplingRejectsEvidence() throws IOException {
+		HttpURLConnection connection = get("q=p(burglary%7Cjohn_calls,mary_calls)&method=direct&samples=1000&seed=1");
+		assertEquals(400, connection.getResponseCode());
+		assertTrue(read(connection.getErrorStream()).startsWith("Error: Direct sampling cannot use evidence"));
+	}
+
+	@Test
+	public void directSamplingAnswersPriors() throws IOException {
+		HttpURLConnection connection = get("q=p(burglary)&method=direct&samples=1000&seed=1");
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(read(connection.getInputStream()).startsWith("p(burglary=true) = "));
+	}
+
+	@Test
+	public void rejectionSamplingRequiresEvidence() throws IOException {
+		assertEquals(400, get("q=p(burglary)&method=rejection&samples=1000").getResponseCode());
+	}
+
+	@Test
+	public void sampleCountIsBounded() throws IOException {
+		assertEquals(400, get("q=p(burglary)&samples=" + (InferenceServer.MAX_SAMPLES + 1)).getResponseCode());
+		assertEquals(400, get("q=p(burglary)&samples=0").getResponseCode());
+	}
+
+	@Test
+	public void gibbsSamplingAnswers() throws IOException {
+		HttpURLConnection connection = get("q=p(burglary%7Cjohn_calls,mary_calls)&method=gibbs&samples=20000&seed=3");
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(read(connection.getInputStream()).startsWith("p(burglary=true | john_calls, mary_calls) = "));
+	}
+
+	private HttpURLConnection get(String query) throws IOException {
+		URL url = new URL("http://localhost:" + server.getPort() + "/query?" + query);
+		return (HttpURLConnection)url.openConnection();
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try(InputStream stream = in) {
+			return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
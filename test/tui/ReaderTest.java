@@ -0,0 +1,131 @@
+package tui;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import bn.CompiledNetwork;
+import bn.Node;
+
+public class ReaderTest {
+
+	private static Node[] read(String text) throws IOException {
+		return Reader.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static NetworkFormatException failure(String text) {
+		return assertThrows(NetworkFormatException.class, () -> read(text));
+	}
+
+	@Test
+	public void parsesProbabilitiesExactlyLikeParseDouble() throws IOException {
+		List<String> inputs = new ArrayList<String>(Arrays.asList(
+			"0", "1", ".5", "1.", "0.", "0.95", ".001", "1e0", "1E+0", "1.0E-5", "1e-5", "+0.25", "100e-2", "0.1e1",
+			"0.1000000000000000055511151231257827021181583404541015625", "0.30000000000000004", "0.29999999999999998889776975",
+			"0.9999999999999999", "0.99999999999999994448884876874217", "0.999999999999999999999999",
+			"9007199254740993e-16", "9007199254740992e-16", "123456789012345678901234567890e-30",
+			"0.000000000000000000000001234", "1e-22", "1e-23", "4.9e-324", "2.2250738585072014E-308",
+			"0.00000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000001"));
+		SplittableRandom random = new SplittableRandom(13);
+		for(int k = 0; k < 3000; k++){
+			double p = random.nextDouble();
+			inputs.add(Double.toString(p));
+			inputs.add(new BigDecimal(p).toPlainString()); //the exact binary value, up to 1074 digits
+			inputs.add(String.format("%.15f", p));
+			inputs.add(String.format("%.3e", p));
+			inputs.add(String.valueOf(random.nextInt(1000000)) + "e-6");
+		}
+
+		StringBuilder text = new StringBuilder().append(inputs.size()).append('\n');
+		for(int i = 0; i < inputs.size(); i++){
+			text.append("n").append(i).append('\n').append(inputs.get(i)).append('\n');
+		}
+		CompiledNetwork network = new CompiledNetwork(read(text.toString()));
+		for(int i = 0; i < inputs.size(); i++){
+			assertEquals(Double.parseDouble(inputs.get(i)), network.getCPT(i)[0], inputs.get(i));
+		}
+	}
+
+	@Test
+	public void reportsTheLineOfAMalformedProbability() {
+		NetworkFormatException e = failure("2\na\n.3\n\nb|a\n.9\n.2x\n");
+		assertEquals(7, e.getLineNumber());
+		assertTrue(e.getMessage().contains(".2x"));
+		assertEquals(3, failure("1\na\n1.5\n").getLineNumber());
+		assertEquals(3, failure("1\na\n-.5\n").getLineNumber());
+		assertEquals(3, failure("1\na\n.\n").getLineNumber());
+		assertEquals(3, failure("1\na\n1e\n").getLineNumber());
+	}
+
+	@Test
+	public void reportsTheLineOfAStructuralError() {
+		assertEquals(1, failure("").getLineNumber());
+		assertEquals(4, failure("1\na\n.3\nb\n.4\n").getLineNumber()); //more nodes than announced
+		assertEquals(3, failure("2\na\n.3\n").getLineNumber()); //fewer nodes than announced
+		assertEquals(5, failure("2\na\n.3\nb|a\n.9\n").getLineNumber()); //a missing row
+		assertEquals(3, failure("1\na\nnoisy-and\n").getLineNumber());
+		assertEquals(4, failure("2\na\n.3\na\n.4\n").getLineNumber());
+	}
+
+	@Test
+	public void rejectsRowsThatDoNotSumToOne() {
+		NetworkFormatException e = failure("2\ns(x,y,z)\n.2 .3 .5\nt(u,v)|s\n.5 .5\n.6 .3\n.1 .9\n");
+		assertEquals(6, e.getLineNumber());
+		assertTrue(e.getMessage().contains("sum to"));
+		assertEquals(3, failure("1\ns(x,y,z)\n.2 .3\n").getLineNumber()); //too few states
+		assertEquals(3, failure("1\ns(x,y,z)\n.2 .3 .4 .1\n").getLineNumber()); //too many
+	}
+
+	@Test
+	public void rejectsAnUnknownParent() {
+		NetworkFormatException e = failure("2\na\n.3\nb|a,c\n.9\n.2\n.5\n.5\n");
+		assertEquals(4, e.getLineNumber());
+		assertTrue(e.getMessage().contains("Unknown parent \"c\""));
+	}
+
+	@Test
+	public void readsMultiValuedHeaders() throws IOException {
+		Node[] nodes = read("2\nWeather( Sunny, cloudy ,rain)\n.5 .3 .2\nwet(dry,soaked)|weather\n.9,.1\n.6 .4\n.2 .8\n");
+		CompiledNetwork network = new CompiledNetwork(nodes);
+		assertEquals(3, network.getCardinality(0));
+		assertEquals("sunny", network.getStateName(0, 0));
+		assertEquals(2, network.getStateIndex(0, "rain"));
+		assertArrayEquals(new double[] { .5, .3, .2 }, network.getTable(0));
+		assertArrayEquals(new double[] { .9, .1, .6, .4, .2, .8 }, network.getTable(1), 1e-15);
+		assertEquals(2, failure("1\nw(a,b\n.5 .5\n").getLineNumber());
+		assertEquals(2, failure("1\nw(a,a)\n.5 .5\n").getLineNumber());
+	}
+
+	@Test
+	public void readsNoisyOrAndTreeCPTs() throws IOException {
+		String header = "2\nburglary\n.001\nearthquake\n.002\n";
+		CompiledNetwork dense = new CompiledNetwork(read(header.replace("2\n", "3\n") + "alarm|burglary,earthquake\n.95\n.95\n.29\n.001\n"));
+		CompiledNetwork tree = new CompiledNetwork(read(header.replace("2\n", "3\n")
+			+ "alarm|burglary,earthquake\ntree\nburglary\n.95\nearthquake\n.29\n.001\n"));
+		assertArrayEquals(dense.getTable(2), tree.getTable(2), 0);
+
+		CompiledNetwork noisyOr = new CompiledNetwork(read(header.replace("2\n", "3\n") + "alarm|burglary,earthquake\nNoisy-OR\n.01\n.9\n.3\n"));
+		//rows: both true, burglary only, earthquake only, neither
+		double[] expected = { 1 - .99 * .1 * .7, 0, 1 - .99 * .1, 0, 1 - .99 * .7, 0, .01, 0 };
+		double[] table = noisyOr.getTable(2);
+		for(int row = 0; row < 4; row++){
+			assertEquals(expected[2 * row], table[2 * row], 1e-15);
+		}
+
+		assertEquals(9, failure(header.replace("2\n", "3\n") + "alarm|burglary,earthquake\ntree\nburglary\nburglary\n.1\n.2\n.3\n")
+			.getLineNumber()); //a parent tested twice on one path
+		assertEquals(7, failure("3\ns(x,y,z)\n.2 .3 .5\nb\n.5\nc|s,b\nnoisy-or\n.1\n.2\n.3\n").getLineNumber());
+	}
+}
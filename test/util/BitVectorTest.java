@@ -0,0 +1,85 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class BitVectorTest {
+
+	@Test
+	public void rankRoundTripsForEveryLength() {
+		SplittableRandom random = new SplittableRandom(17);
+		for(int n = 0; n <= 63; n++) {
+			long mask = n == 0 ? 0 : -1L >>> (64 - n);
+			for(int k = 0; k < 200; k++) {
+				long rank = random.nextLong() & mask;
+				BitVector bv = BitVector.fromRank(n, rank);
+				assertEquals(rank, bv.toRank(), "n = " + n);
+				for(int p = 0; p < n; p++) {
+					//bit (n-1-p) of the rank is set when position p is false
+					assertEquals(((rank >>> (n - 1 - p)) & 1) == 0, bv.get(p), "n = " + n + ", position " + p);
+				}
+			}
+			assertEquals(mask, BitVector.fromRank(n, mask).toRank());
+		}
+	}
+
+	@Test
+	public void setBitsGiveTheirRank() {
+		BitVector bv = new BitVector(5);
+		assertEquals(0, bv.toRank());
+		bv.set(0, false);
+		assertEquals(16, bv.toRank());
+		bv.set(4, false);
+		assertEquals(17, bv.toRank());
+		bv.set(0, true);
+		assertEquals(1, bv.toRank());
+		bv.setRank(22);
+		assertEquals("01001", bv.toString()); //22 is 10110 and a set rank bit is a false position
+		assertEquals(BitVector.fromRank(5, 22), bv);
+		bv.reset();
+		assertEquals(0, bv.toRank());
+	}
+
+	@Test
+	public void ranksFollowAssignmentIteratorOrder() {
+		AssignmentIterator it = new AssignmentIterator(6);
+		long rank = 0;
+		while(it.hasNext()) {
+			BitVector bv = it.next();
+			assertEquals(rank, bv.toRank());
+			assertEquals(BitVector.fromRank(6, rank), bv);
+			rank++;
+		}
+		assertEquals(64, rank);
+	}
+
+	@Test
+	public void longVectorsHaveNoRank() {
+		BitVector bv = new BitVector(130);
+		bv.set(63, false);
+		bv.set(64, false);
+		bv.set(129, false);
+		assertFalse(bv.get(63));
+		assertFalse(bv.get(64));
+		assertTrue(bv.get(65));
+		assertFalse(bv.get(129));
+		assertThrows(IndexOutOfBoundsException.class, () -> bv.get(130));
+		assertThrows(IllegalStateException.class, () -> bv.toRank());
+		assertThrows(IllegalStateException.class, () -> bv.setRank(0));
+
+		BitVector other = new BitVector(130);
+		assertNotEquals(bv, other);
+		other.set(63, false);
+		other.set(64, false);
+		other.set(129, false);
+		assertEquals(bv, other);
+		assertEquals(bv.hashCode(), other.hashCode());
+	}
+}
@@ -0,0 +1,156 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+public class WeightedSetTest {
+
+	@Test
+	public void denseSetsAreIndexedByRank() {
+		double[] weights = { .1, .2, .3, .4 };
+		WeightedSet set = new WeightedSet(2, weights);
+		assertArrayEquals(new long[] { 0, 1, 2, 3 }, set.getEventRanks());
+		Iterator<BitVector> events = set.getEvents().iterator();
+		for(long rank = 0; rank < 4; rank++) {
+			BitVector event = events.next();
+			assertEquals(rank, event.toRank());
+			assertEquals(weights[(int)rank], set.getWeight(event));
+		}
+		set.increment(BitVector.fromRank(2, 2), .5);
+		assertEquals(.8, weights[2], 1e-15); //the array is used, not copied
+		assertThrows(IllegalArgumentException.class, () -> new WeightedSet(3, new double[4]));
+
+		//the first variable is the most significant digit
+		WeightedSet mixed = new WeightedSet(new int[] { 2, 3 });
+		mixed.increment(1 * 3 + 2, 1);
+		assertEquals(6, mixed.getSize());
+		assertEquals(1, mixed.getWeight(5));
+		assertThrows(IllegalStateException.class, () -> mixed.getEvents());
+	}
+
+	@Test
+	public void mergesDenseSets() {
+		WeightedSet a = new WeightedSet(2, new double[] { 1, 0, 2, 0 });
+		a.merge(new WeightedSet(2, new double[] { 0, 3, 1, 0 }));
+		assertArrayEquals(new long[] { 0, 1, 2, 3 }, a.getEventRanks());
+		assertEquals(1, a.getWeight(0));
+		assertEquals(3, a.getWeight(1));
+		assertEquals(3, a.getWeight(2));
+		assertEquals(0, a.getWeight(3));
+		a.normalizeWeights();
+		assertEquals(3.0 / 7, a.getWeight(2), 1e-15);
+	}
+
+	@Test
+	public void becomesSparseAboveTheDenseLimit() {
+		WeightedSet dense = new WeightedSet(WeightedSet.DENSE_LIMIT);
+		assertFalse(dense.isSparse());
+		assertEquals(1 << WeightedSet.DENSE_LIMIT, dense.getSize());
+
+		WeightedSet sparse = new WeightedSet(WeightedSet.DENSE_LIMIT + 1);
+		assertTrue(sparse.isSparse());
+		assertEquals(0, sparse.getSize());
+
+		//3^10 configurations fit under 2^16, 3^11 do not
+		int[] ten = new int[10];
+		Arrays.fill(ten, 3);
+		assertFalse(new WeightedSet(ten).isSparse());
+		int[] eleven = new int[11];
+		Arrays.fill(eleven, 3);
+		assertTrue(new WeightedSet(eleven).isSparse());
+	}
+
+	@Test
+	public void sparseSetsOnlyStoreWhatIsWeighted() {
+		int n = 63;
+		WeightedSet set = new WeightedSet(n);
+		Map<Long, Double> expected = new HashMap<Long, Double>();
+		SplittableRandom random = new SplittableRandom(3);
+		//enough distinct ranks for the table to grow several times, including the largest rank
+		for(int k = 0; k < 5000; k++) {
+			long rank = k == 0 ? Long.MAX_VALUE : random.nextLong() >>> 1;
+			double amount = random.nextInt(1, 10);
+			set.increment(rank, amount);
+			expected.merge(rank, amount, Double::sum);
+			if(k % 7 == 0) {
+				set.increment(rank, 1); //incrementing a stored rank adds no slot
+				expected.merge(rank, 1.0, Double::sum);
+			}
+		}
+		assertEquals(expected.size(), set.getSize());
+		assertEquals(0, set.getWeight(12345L));
+		assertEquals(expected.size(), set.getSize(), "reading a missing rank must not store it");
+		assertWeights(expected, set);
+
+		BitVector event = BitVector.fromRank(n, Long.MAX_VALUE);
+		assertEquals(expected.get(Long.MAX_VALUE), set.getWeight(event));
+		assertTrue(set.getEvents().contains(event));
+
+		double total = set.getTotalWeight();
+		set.normalizeWeights();
+		assertEquals(1, set.getTotalWeight(), 1e-12);
+		assertEquals(expected.get(Long.MAX_VALUE) / total, set.getWeight(Long.MAX_VALUE), 1e-15);
+	}
+
+	@Test
+	public void mergesDenseAndSparseSets() {
+		int n = 10;
+		SplittableRandom random = new SplittableRandom(8);
+		for(int combination = 0; combination < 4; combination++) {
+			WeightedSet target = (combination & 2) == 0 ? new WeightedSet(n) : WeightedSet.sparse(n);
+			WeightedSet source = (combination & 1) == 0 ? new WeightedSet(n) : WeightedSet.sparse(n);
+			Map<Long, Double> expected = new HashMap<Long, Double>();
+			for(int k = 0; k < 300; k++) {
+				long rank = random.nextInt(1 << n);
+				double amount = random.nextInt(1, 5);
+				WeightedSet set = random.nextBoolean() ? target : source;
+				set.increment(rank, amount);
+				expected.merge(rank, amount, Double::sum);
+			}
+			target.merge(source);
+			assertWeights(expected, target);
+			if(target.isSparse()) {
+				assertEquals(expected.size(), target.getSize(), "merging must not store configurations without weight");
+			}
+		}
+	}
+
+	@Test
+	public void iteratesOverUpToSixtyThreeVariables() {
+		AssignmentIterator it = new AssignmentIterator(63, true);
+		assertEquals(0, it.nextRank());
+		BitVector first = it.next();
+		assertEquals(1, first.toRank());
+		assertTrue(it.next() == first); //the shared vector is refilled
+		assertTrue(it.hasNext());
+		assertThrows(IllegalArgumentException.class, () -> new AssignmentIterator(64));
+	}
+
+	@Test
+	public void mergesOnlySetsOverTheSameVariables() {
+		assertThrows(IllegalArgumentException.class, () -> new WeightedSet(3).merge(new WeightedSet(4)));
+		assertThrows(IllegalArgumentException.class, () -> new WeightedSet(2).merge(new WeightedSet(new int[] { 2, 3 })));
+	}
+
+	//Checks that a set has exactly the expected weights, every other configuration having none
+	private static void assertWeights(Map<Long, Double> expected, WeightedSet set) {
+		for(Map.Entry<Long, Double> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), set.getWeight(entry.getKey()), "rank " + entry.getKey());
+		}
+		for(long rank : set.getEventRanks()) {
+			assertEquals(expected.getOrDefault(rank, 0.0), set.getWeight(rank), "rank " + rank);
+		}
+		assertEquals(expected.values().stream().mapToDouble(Double::doubleValue).sum(), set.getTotalWeight(), 1e-9);
+	}
+}
@@ -0,0 +1,49 @@
+package util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class Xoshiro256Test {
+
+	private static final int LENGTH = 10000;
+
+	@Test
+	public void nestedSplitsAreDisjoint() {
+		//a root split once per run, and every run split once per task, as the samplers do
+		RandomSource root = new Xoshiro256(431L);
+		Set<Long> seen = new HashSet<Long>();
+		for(int run = 0; run < 4; run++) {
+			RandomSource stream = root.split();
+			for(int task = 0; task < 4; task++) {
+				RandomSource taskStream = stream.split();
+				for(int k = 0; k < LENGTH; k++) {
+					assertTrue(seen.add(taskStream.nextLong()), "run " + run + ", task " + task + " repeats a value");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void childDoesNotRepeatLaterSibling() {
+		RandomSource root = new Xoshiro256(7L);
+		RandomSource first = root.split();
+		first.split();
+		RandomSource secondTaskOfFirst = first.split();
+		RandomSource firstTaskOfSecond = root.split().split();
+		assertTrue(secondTaskOfFirst.nextLong() != firstTaskOfSecond.nextLong());
+	}
+
+	@Test
+	public void splitsAreReproducible() {
+		RandomSource a = new Xoshiro256(99L).split().split();
+		RandomSource b = new Xoshiro256(99L).split().split();
+		for(int k = 0; k < 100; k++) {
+			assertEquals(a.nextLong(), b.nextLong());
+		}
+	}
+}